@@ -0,0 +1,164 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// minimal DecodeHost for benchmarks, decoded lines are counted and dropped
+final public class BenchHost implements DecodeHost, ChartSink {
+
+    static final int block_size = 4096;
+    final long sample_rate;
+    final int image_width = 1810;
+    int lines_per_minute = 120;
+    long lines = 0;
+    // decimate high rates as the receiver does by default
+    boolean decimate = true;
+    boolean float_dsp = false;
+    String demodulator = "pll";
+    final byte[] line = new byte[image_width];
+
+    public BenchHost(long rate) {
+        sample_rate = rate;
+    }
+
+    // a fax-like FM signal: 1900 Hz center, +/- 400 Hz deviation,
+    // modulated with a few cycles of gray ramp per scan line
+    public static short[] fax_signal(long rate, int len) {
+        short[] data = new short[len];
+        double phase = 0;
+        for (int i = 0; i < len; i++) {
+            double t = (double) i / rate;
+            double v = Math.sin(2 * Math.PI * 5 * t);
+            phase += 2 * Math.PI * (1900 + 400 * v) / rate;
+            data[i] = (short) (Math.sin(phase) * 8000);
+        }
+        return data;
+    }
+
+    @Override
+    public long get_sample_rate() {
+        return sample_rate;
+    }
+
+    @Override
+    public double get_calibration() {
+        return 0;
+    }
+
+    @Override
+    public int get_lines_per_minute() {
+        return lines_per_minute;
+    }
+
+    @Override
+    public int get_ioc() {
+        return 576;
+    }
+
+    @Override
+    public boolean get_grayscale() {
+        return true;
+    }
+
+    @Override
+    public boolean get_video_filter() {
+        return true;
+    }
+
+    @Override
+    public int get_nco_table_bits() {
+        return 12;
+    }
+
+    @Override
+    public boolean get_nco_interpolate() {
+        return true;
+    }
+
+    @Override
+    public boolean get_sync_tracking() {
+        return true;
+    }
+
+    @Override
+    public boolean get_decimate() {
+        return decimate;
+    }
+
+    @Override
+    public boolean get_float_dsp() {
+        return float_dsp;
+    }
+
+    @Override
+    public String get_demodulator() {
+        return demodulator;
+    }
+
+    @Override
+    public boolean get_auto_calibrate() {
+        return false;
+    }
+
+    @Override
+    public void set_auto_calibration(double cal_val) {
+    }
+
+    @Override
+    public ChartSink new_chart(int width, double cal_val) {
+        return this;
+    }
+
+    @Override
+    public void cancel_calibrate() {
+    }
+
+    @Override
+    public void enable_input(boolean enable) {
+    }
+
+    @Override
+    public void tell_user(String message, String title) {
+    }
+
+    @Override
+    public void begin_line() {
+    }
+
+    @Override
+    public void put_pixel(int x, byte v) {
+        line[x] = v;
+    }
+
+    @Override
+    public void end_line() {
+        lines++;
+    }
+
+    @Override
+    public void refresh() {
+    }
+
+    @Override
+    public void finish(double quality) {
+    }
+}
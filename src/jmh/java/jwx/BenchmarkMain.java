@@ -0,0 +1,108 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+/**
+ *
+ * @author mgrouch
+ */
+// runs the benchmarks with the allocation profiler and
+// summarizes the results in real-time terms:
+//
+// benchmarks with a "rate" parameter measure ns per sample,
+// methods named *_line measure ns per scan line, at the benchmark's
+// "lpm" parameter or else 120 LPM (0.5 s), the line the benchmarks
+// without that parameter are built with,
+// methods named *_frame ns per spectrum frame (10 per second),
+// headroom is the real-time budget divided by the measured cost,
+// cpu the share of one core it takes to keep up in real time
+final public class BenchmarkMain {
+
+    static final int default_lpm = 120;
+    static final double frame_period_ns = 0.1e9;
+
+    // accepts the usual JMH command line, e.g. "DecodeBenchmark -p rate=8000"
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options opt = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(opt).run();
+        report(results);
+    }
+
+    static void report(Collection<RunResult> results) {
+        CommonCode.p("");
+        CommonCode.p(String.format("%-44s %-36s %12s %12s %12s %10s %8s",
+                "benchmark", "parameters", "ns/op", "ns/sample", "B/op", "headroom", "cpu"));
+        for (RunResult rr : results) {
+            String name = rr.getParams().getBenchmark();
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+            String rate_str = rr.getParams().getParam("rate");
+            double score = rr.getPrimaryResult().getScore();
+            double rate = (rate_str != null) ? Double.parseDouble(rate_str) : Double.NaN;
+            String lpm_str = rr.getParams().getParam("lpm");
+            int lpm = (lpm_str != null) ? Integer.parseInt(lpm_str) : default_lpm;
+            double ns_sample, budget_ns;
+            if (name.endsWith("_line")) {
+                // one op is one scan line
+                budget_ns = 60e9 / lpm;
+                ns_sample = score / (rate * budget_ns / 1e9);
+            } else if (name.endsWith("_frame")) {
+                // one op is one spectrum frame
+                ns_sample = score / (rate * frame_period_ns / 1e9);
+                budget_ns = frame_period_ns;
+            } else {
+                // one op is one sample, if the benchmark has a rate
+                ns_sample = Double.isNaN(rate) ? rate : score;
+                budget_ns = 1e9 / rate;
+            }
+            double alloc = Double.NaN;
+            // JMH's map has raw Result values, going by key keeps
+            // the raw type out of this code
+            for (String key : rr.getSecondaryResults().keySet()) {
+                if (key.endsWith("gc.alloc.rate.norm")) {
+                    alloc = rr.getSecondaryResults().get(key).getScore();
+                }
+            }
+            StringBuilder param = new StringBuilder();
+            for (String key : rr.getParams().getParamsKeys()) {
+                param.append((param.length() > 0) ? "," : "").append(key).append('=').append(rr.getParams().getParam(key));
+            }
+            CommonCode.p(String.format("%-44s %-36s %12.2f %12s %12.1f %10s %8s",
+                    name, param, score, fmt(ns_sample, "%.3f"), alloc, fmt(budget_ns / score, "%.1fx"),
+                    fmt(100 * score / budget_ns, "%.2f%%")));
+        }
+    }
+
+    private static String fmt(double v, String f) {
+        return (Double.isNaN(v) || Double.isInfinite(v)) ? "-" : String.format(f, v);
+    }
+}
@@ -0,0 +1,138 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// opening an archived chart: load_mapped is load_file, read a row
+// at a time into a MappedRaster, load_imageio the whole image
+// decoded by ImageIO and copied into a raster on the heap, as
+// charts used to be loaded; run with -prof gc to see the heap each
+// one needs
+//
+// page_mapped and page_heap draw every tile of the loaded chart once, as scrolling
+// from top to bottom does, mapped and on the heap
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartLoadBenchmark {
+
+    @Param({"4000", "16000"})
+    public int lines;
+    final int width = 1810;
+    File dir;
+    File file;
+    ChartImage mapped_chart, heap_chart;
+    BufferedImage screen;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = java.nio.file.Files.createTempDirectory("jwx_bench").toFile();
+        file = new File(dir, "archive.png");
+        ChartImage c = new ChartImage(file.getPath(), width, 0);
+        Random r = new Random(1);
+        byte[] line = new byte[width];
+        for (int y = 0; y < lines; y++) {
+            java.util.Arrays.fill(line, (byte) 255);
+            for (int k = 0; k < 12; k++) {
+                int x = r.nextInt(width - 8);
+                for (int i = 0; i < 1 + r.nextInt(6); i++) {
+                    line[x + i] = (byte) r.nextInt(64);
+                }
+            }
+            c.add_line(line);
+        }
+        c.update_image(false);
+        c.save_file();
+        mapped_chart = load_mapped();
+        heap_chart = new ChartImage(file.getPath(), width, 0);
+        heap_chart.raster = load_imageio();
+        heap_chart.update_image(true);
+        screen = new BufferedImage(width, mapped_chart.tile_rows, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        mapped_chart.release();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public ChartImage load_mapped() {
+        if (mapped_chart != null) {
+            mapped_chart.release();
+        }
+        mapped_chart = new ChartImage(file.getPath(), width, 0);
+        mapped_chart.load_file();
+        return mapped_chart;
+    }
+
+    @Benchmark
+    public ChartRaster load_imageio() throws IOException {
+        BufferedImage bi = ImageIO.read(file);
+        int w = bi.getWidth();
+        ChartRaster raster = new ChartRaster(w, mapped_chart.tile_rows);
+        byte[] data = ((DataBufferByte) bi.getData().getDataBuffer()).getData();
+        for (int y = 0; y < bi.getHeight(); y++) {
+            raster.reserve(y);
+            raster.set_row(y, data, y * w);
+            raster.commit_row();
+        }
+        return raster;
+    }
+
+    private int page(ChartImage c) {
+        java.awt.Graphics g = screen.getGraphics();
+        ChartRaster raster = c.raster;
+        int tiles = (c.height + raster.tile_rows - 1) / raster.tile_rows;
+        for (int t = 0; t < tiles; t++) {
+            g.drawImage(raster.tile_image(t), 0, 0, null);
+        }
+        g.dispose();
+        return tiles;
+    }
+
+    @Benchmark
+    public int page_mapped() {
+        return page(mapped_chart);
+    }
+
+    @Benchmark
+    public int page_heap() {
+        return page(heap_chart);
+    }
+}
@@ -0,0 +1,188 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// writing a chart to disk: the whole chart as JPEG, as every save
+// used to, the whole chart as PNG, as a save after an edit does,
+// and finishing a received chart, streamed to PNG, which only has
+// the rows since the last flush left to write, or named .jpg and
+// written whole
+//
+// finish_chart waits for the ChartFinisher to write the chart,
+// handoff_chart is only what finish() costs the decoder
+//
+// stream_line is the cost per received line of streaming, flushes
+// included, journal_line the same with the ChartJournal the receiver
+// keeps, forced to disk every few lines; the lines are white with a
+// few dark strokes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartSaveBenchmark {
+
+    @Param({"1000", "4000"})
+    public int lines;
+    final int width = 1810;
+    byte[][] line_data;
+    ChartImage jpeg_chart, png_chart, line_chart, journal_chart;
+    File dir;
+
+    // a chart received up to its last line before each finish
+    @State(Scope.Thread)
+    public static class Received {
+
+        @Param({"1000", "4000"})
+        public int lines;
+        @Param({"stream.png", "whole.jpg"})
+        public String name;
+        ChartSaveBenchmark bench;
+        ChartImage chart;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            bench = new ChartSaveBenchmark();
+            bench.lines = lines;
+            bench.setup();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            bench.teardown();
+        }
+
+        @Setup(Level.Invocation)
+        public void receive_chart() throws IOException {
+            chart = new ChartImage(new File(bench.dir, name).getPath(), bench.width, 0);
+            chart.start_stream();
+            bench.filled(chart);
+        }
+
+        @TearDown(Level.Invocation)
+        public void written() {
+            chart.await_finish();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = java.nio.file.Files.createTempDirectory("jwx_bench").toFile();
+        Random r = new Random(1);
+        line_data = new byte[64][width];
+        for (byte[] l : line_data) {
+            java.util.Arrays.fill(l, (byte) 255);
+            for (int k = 0; k < 12; k++) {
+                int x = r.nextInt(width - 8);
+                for (int i = 0; i < 1 + r.nextInt(6); i++) {
+                    l[x + i] = (byte) r.nextInt(64);
+                }
+            }
+        }
+        jpeg_chart = filled(new ChartImage(new File(dir, "save.jpg").getPath(), width, 0));
+        png_chart = filled(new ChartImage(new File(dir, "save.png").getPath(), width, 0));
+        line_chart = next_chart(null, "line.png", false);
+        journal_chart = next_chart(null, "journal.png", true);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        line_chart.finish();
+        journal_chart.finish();
+        ChartFinisher.drain();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private ChartImage filled(ChartImage c) {
+        for (int i = 0; i < lines; i++) {
+            c.add_line(line_data[i % line_data.length]);
+        }
+        c.update_image(false);
+        return c;
+    }
+
+    @Benchmark
+    public boolean save_jpeg() {
+        jpeg_chart.changed = true;
+        jpeg_chart.save_file();
+        return jpeg_chart.changed;
+    }
+
+    @Benchmark
+    public boolean save_png() {
+        png_chart.changed = true;
+        png_chart.save_file();
+        return png_chart.changed;
+    }
+
+    @Benchmark
+    public boolean finish_chart(Received r) {
+        r.chart.update_image(false);
+        r.chart.finish();
+        r.chart.await_finish();
+        return r.chart.changed;
+    }
+
+    @Benchmark
+    public boolean handoff_chart(Received r) {
+        r.chart.update_image(false);
+        r.chart.finish();
+        return r.chart.changed;
+    }
+
+    // a new streamed chart once c has all its lines
+    private ChartImage next_chart(ChartImage c, String name, boolean journaled) throws IOException {
+        if (c != null) {
+            if (c.raster.height < lines) {
+                return c;
+            }
+            c.finish();
+        }
+        c = new ChartImage(new File(dir, name).getPath(), width, 0);
+        c.start_stream(journaled);
+        return c;
+    }
+
+    @Benchmark
+    public void stream_line() throws IOException {
+        line_chart.add_line(line_data[line_chart.raster.height % line_data.length]);
+        line_chart = next_chart(line_chart, "line.png", false);
+    }
+
+    @Benchmark
+    public void journal_line() throws IOException {
+        journal_chart.add_line(line_data[journal_chart.raster.height % line_data.length]);
+        journal_chart = next_chart(journal_chart, "journal.png", true);
+    }
+}
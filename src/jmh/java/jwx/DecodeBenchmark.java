@@ -0,0 +1,82 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the complete per-sample decoder path, measured while a chart is
+// being assembled (state PROC), which is the most expensive state,
+// per capture sample with and without the decimating front end,
+// and at 120 and 240 lines per minute; -p demod=pll,quadrature
+// compares the demodulators
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"8000", "12000", "16000", "24000", "32000", "48000", "96000"})
+    public long rate;
+    @Param({"true", "false"})
+    public boolean decimate;
+    @Param({"120", "240"})
+    public int lpm;
+    @Param({"pll"})
+    public String demod;
+    BenchHost host;
+    DecodeFax decode_fax;
+    double[] block;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        host = new BenchHost(rate);
+        host.decimate = decimate;
+        host.lines_per_minute = lpm;
+        host.demodulator = demod;
+        decode_fax = new DecodeFax(host);
+        short[] sig = BenchHost.fax_signal(rate, BenchHost.block_size);
+        block = new double[sig.length];
+        for (int i = 0; i < sig.length; i++) {
+            block[i] = sig[i] * PcmCodec.inv_full_scale;
+        }
+    }
+
+    // restart the chart each iteration so the
+    // chart length limit never ends reception
+    @Setup(Level.Iteration)
+    public void start_chart() {
+        decode_fax.init_chart_read(false);
+        decode_fax.init_chart_read(true);
+        decode_fax.lock();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void process_data() {
+        decode_fax.process_data(block, block.length);
+    }
+}
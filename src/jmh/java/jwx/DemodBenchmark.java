@@ -0,0 +1,104 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the PLL against the quadrature demodulator at the internal rates
+// DecodeFax runs them at, per sample on normalized input
+//
+// setup prints how closely each recovers the modulation of a test
+// signal through the decoder's 650 Hz output lowpass, and when it
+// last strayed by more than 10% of the deviation (the lock-in);
+// the decoded images of recordings compare with FileDecoder -demod
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemodBenchmark {
+
+    @Param({"8000", "11025", "16000"})
+    public long rate;
+    @Param({"pll", "quadrature"})
+    public String demod;
+    final double center_f = 1900.0;
+    final double deviation_f = 400.0;
+    BenchHost host;
+    Demodulator demodulator;
+    double[] block, out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        host = new BenchHost(rate);
+        block = normalized(BenchHost.fax_signal(rate, BenchHost.block_size));
+        out = new double[block.length];
+        demodulator = Demodulator.create(demod, center_f, rate, host);
+        report_accuracy();
+    }
+
+    private static double[] normalized(short[] sig) {
+        double[] d = new double[sig.length];
+        for (int i = 0; i < sig.length; i++) {
+            d[i] = sig[i] / 8000.0;
+        }
+        return d;
+    }
+
+    private void report_accuracy() {
+        Demodulator d = Demodulator.create(demod, center_f, rate, host);
+        // the same lowpass on the output and on the modulation
+        // itself, so the lowpass delay does not count as error
+        BiQuadraticFilter fo = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 1.0 / Math.sqrt(2));
+        BiQuadraticFilter fm = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 1.0 / Math.sqrt(2));
+        int total = (int) (2 * rate);
+        double[] sig = normalized(BenchHost.fax_signal(rate, total));
+        d.process(sig, 0, total, sig);
+        double scale = center_f / deviation_f;
+        double max = 0, sum = 0;
+        int count = 0, last_bad = -1;
+        for (int i = 0; i < total; i++) {
+            double v = fm.filter(Math.sin(2 * Math.PI * 5 * i / rate));
+            double e = Math.abs(fo.filter(sig[i]) * scale - v);
+            if (e > 0.1) {
+                last_bad = i;
+            }
+            if (i >= total / 2) {
+                max = Math.max(max, e);
+                sum += e * e;
+                count++;
+            }
+        }
+        CommonCode.p(String.format("%n%s demodulator, rate %d: error rms %.3e max %.3e of deviation, settled after %.1f ms",
+                demod, rate, Math.sqrt(sum / count), max, (last_bad + 1) * 1000.0 / rate));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public int demodulate() {
+        return demodulator.process(block, 0, block.length, out);
+    }
+}
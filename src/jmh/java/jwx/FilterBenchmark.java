@@ -0,0 +1,150 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// single filters as DecodeFax uses them, one call per sample
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"8000", "12000", "16000", "24000", "32000", "48000", "96000"})
+    public long rate;
+    BiQuadraticFilter biquad;
+    BiQuadraticFilter biquad_a, biquad_b;
+    BiQuadraticCascade cascade;
+    GoertzelFilter goertzel;
+    GoertzelFilter goertzel_start, goertzel_start_288, goertzel_stop;
+    ToneDetectorBank tones;
+    Decimator decimator;
+    double[] block, out_block;
+    float[] float_block, float_out_block;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        biquad = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 1.0 / Math.sqrt(2));
+        goertzel = new GoertzelFilter(300.0 / rate, rate / 4.0, 0.5);
+        // the three APT tones as separate filters and as one bank
+        goertzel_start = new GoertzelFilter(300.0 / rate, rate / 4.0, 0.5);
+        goertzel_start_288 = new GoertzelFilter(675.0 / rate, rate / 4.0, 0.5);
+        goertzel_stop = new GoertzelFilter(450.0 / rate, rate / 4.0, 0.5);
+        tones = new ToneDetectorBank(new double[]{300.0 / rate, 675.0 / rate, 450.0 / rate}, rate / 4.0, 0.5);
+        short[] sig = BenchHost.fax_signal(rate, BenchHost.block_size);
+        block = new double[sig.length];
+        out_block = new double[sig.length];
+        float_block = new float[sig.length];
+        float_out_block = new float[sig.length];
+        for (int i = 0; i < sig.length; i++) {
+            block[i] = sig[i] / 8000.0;
+            float_block[i] = (float) block[i];
+        }
+        // the same 4th order lowpass as two filters and as a cascade
+        cascade = BiQuadraticCascade.butterworth_lowpass(4, 650, rate);
+        biquad_a = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 0.5412);
+        biquad_b = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 1.3066);
+        decimator = new Decimator(rate, Decimator.choose_factor(rate));
+    }
+
+    // the decimating front end at the factor DecodeFax would use
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double[] decimate_block() {
+        decimator.process(block, 0, block.length, out_block);
+        return out_block;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double biquad_filter() {
+        double sum = 0;
+        for (double v : block) {
+            sum += biquad.filter(v);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double[] biquad_filter_block() {
+        biquad.filter(block, out_block, 0, block.length);
+        return out_block;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public float[] biquad_filter_float_block() {
+        biquad.filter(float_block, float_out_block, 0, float_block.length);
+        return float_out_block;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double biquad_pair_filter() {
+        double sum = 0;
+        for (double v : block) {
+            sum += biquad_b.filter(biquad_a.filter(v));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double[] cascade_filter_block() {
+        cascade.filter(block, out_block, 0, block.length);
+        return out_block;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double goertzel_process() {
+        for (double v : block) {
+            goertzel.process(v);
+        }
+        return goertzel.value();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double goertzel_three_tones() {
+        for (double v : block) {
+            goertzel_start.process(v);
+            goertzel_start_288.process(v);
+            goertzel_stop.process(v);
+        }
+        return goertzel_start.value() + goertzel_start_288.value() + goertzel_stop.value();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double tone_bank_process() {
+        tones.process(block, 0, block.length);
+        return tones.value(0) + tones.value(1) + tones.value(2);
+    }
+}
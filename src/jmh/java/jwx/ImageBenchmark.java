@@ -0,0 +1,81 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// chart image handling: appending lines with the periodic display
+// update during reception, and the user-requested rotation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+
+    @Param({"1000", "4000"})
+    public int lines;
+    // lines added between display updates, 2 seconds at 120 LPM
+    static final int update_lines = 4;
+    final int width = 1810;
+    ChartImage receive_chart;
+    ChartImage rotate_chart;
+    byte[] line_data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        line_data = new byte[width];
+        for (int i = 0; i < width; i++) {
+            line_data[i] = (byte) i;
+        }
+        rotate_chart = new ChartImage("bench.jpg", width, 1e-5);
+        for (int i = 0; i < lines; i++) {
+            rotate_chart.add_line(line_data);
+        }
+        rotate_chart.update_image(true);
+        receive_chart = new ChartImage("bench.jpg", width, 1e-5);
+    }
+
+    // average cost per received line over a chart of the given height
+    @Benchmark
+    @OperationsPerInvocation(update_lines)
+    public boolean update_image_line() {
+        if (receive_chart.raster.height >= lines) {
+            receive_chart = new ChartImage("bench.jpg", width, 1e-5);
+        }
+        for (int i = 0; i < update_lines; i++) {
+            receive_chart.add_line(line_data);
+        }
+        return receive_chart.update_image(false);
+    }
+
+    @Benchmark
+    public int rotate_image() {
+        rotate_chart.rotate(true);
+        rotate_chart.update_image(true);
+        return rotate_chart.width;
+    }
+}
@@ -0,0 +1,129 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the float32 kernels against the double path: "double" is the
+// default decoder, "scalar" and "vector" the float32 path with
+// ScalarKernels and VectorKernels, the latter needs -Pvector and
+// falls back to scalar without it
+//
+// decimate_block and process_data are per capture sample,
+// resample_line is one line at the internal rate, quantized
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    @Param({"24000", "48000", "96000"})
+    public long rate;
+    @Param({"double", "scalar", "vector"})
+    public String path;
+    DspKernels kernels;
+    Decimator decimator;
+    final LineResampler resampler = new LineResampler();
+    double[] block, out_block, line, pixels;
+    byte[] pixel_bytes;
+    BenchHost host;
+    DecodeFax decode_fax;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (path) {
+            case "scalar":
+                kernels = new ScalarKernels();
+                break;
+            case "vector":
+                kernels = DspKernels.load();
+                if (kernels instanceof ScalarKernels) {
+                    CommonCode.p("vector kernels unavailable, measuring scalar");
+                }
+                break;
+            default:
+                kernels = null;
+        }
+        short[] sig = BenchHost.fax_signal(rate, BenchHost.block_size);
+        block = new double[sig.length];
+        out_block = new double[sig.length];
+        for (int i = 0; i < sig.length; i++) {
+            block[i] = sig[i] * PcmCodec.inv_full_scale;
+        }
+        int factor = Decimator.choose_factor(rate);
+        decimator = new Decimator(rate, factor, kernels);
+        line = new double[(int) (rate / factor / 2)];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = Math.sin(i * 0.01);
+        }
+        pixels = new double[1810];
+        pixel_bytes = new byte[1810];
+        resampler.set(pixels.length, (double) line.length / pixels.length, kernels);
+        host = new BenchHost(rate);
+        host.float_dsp = (kernels != null);
+        decode_fax = new DecodeFax(host);
+    }
+
+    @Setup(Level.Iteration)
+    public void start_chart() {
+        decode_fax.init_chart_read(false);
+        decode_fax.init_chart_read(true);
+        // the host can't pass a kernel choice, only float or not
+        if (kernels != null) {
+            decode_fax.kernels = kernels;
+            decode_fax.decimator = new Decimator(rate, Decimator.choose_factor(rate), kernels);
+        }
+        decode_fax.lock();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double[] decimate_block() {
+        decimator.process(block, 0, block.length, out_block);
+        return out_block;
+    }
+
+    @Benchmark
+    public byte[] resample_line() {
+        if (kernels != null) {
+            resampler.resample(line, line.length, pixel_bytes, true);
+        } else {
+            resampler.resample(line, line.length, pixels);
+            for (int x = 0; x < pixels.length; x++) {
+                double v = Math.max(0.0, Math.min(1.0, (pixels[x] + 1.0) * 0.5));
+                pixel_bytes[x] = (byte) (v * 255.0);
+            }
+        }
+        return pixel_bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void process_data() {
+        decode_fax.process_data(block, block.length);
+    }
+}
@@ -0,0 +1,93 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// per scan line work outside the per-sample path: accumulating a
+// phasing line in the sync tracker, tracking an image line,
+// resampling a received line to pixels, and the byte line clock
+// correction
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark {
+
+    @Param({"8000", "12000", "16000", "24000", "32000", "48000", "96000"})
+    public long rate;
+    double[] sync_line;
+    byte[] image_line;
+    int line = 0;
+    SyncTracker sync_tracker, image_tracker;
+    final LineResampler resampler = new LineResampler();
+    double[] pixels;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sync_line = new double[(int) (rate / 2)];
+        for (int i = 0; i < sync_line.length; i++) {
+            sync_line[i] = Math.sin(i * 0.01);
+        }
+        image_line = new byte[1810];
+        sync_tracker = new SyncTracker();
+        sync_tracker.start_sync(sync_line.length, sync_line.length * 1e-4, image_line.length, 40);
+        image_tracker = new SyncTracker();
+        image_tracker.start_track(sync_line.length, sync_line.length * 1e-4, image_line.length, true);
+        resampler.set(image_line.length, (double) sync_line.length / image_line.length);
+        pixels = new double[image_line.length];
+    }
+
+    @Benchmark
+    public int sync_tracker_line() {
+        for (int i = 0; i < sync_line.length; i++) {
+            sync_tracker.add_sync(i, sync_line[i]);
+        }
+        sync_tracker.end_sync_line();
+        return sync_tracker.shift;
+    }
+
+    // includes a profile comparison every track_lines lines
+    @Benchmark
+    public int image_tracker_line() {
+        for (int i = 0; i < sync_line.length; i++) {
+            image_tracker.add_track(i, sync_line[i]);
+        }
+        return image_tracker.end_track_line();
+    }
+
+    @Benchmark
+    public double[] resample_image_line() {
+        resampler.resample(sync_line, sync_line.length, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public byte[] clock_correct_image_line() {
+        return CommonCode.clock_correct_line(image_line, ++line, image_line.length * 1e-4);
+    }
+}
@@ -0,0 +1,76 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// capture bytes to decoder samples: the old short buffer copy
+// followed by a conversion to double, and the single pass codec
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmBenchmark {
+
+    @Param({"8000", "48000"})
+    public long rate;
+    byte[] bytes;
+    short[] short_block;
+    double[] block;
+    boolean big_endian;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        short[] sig = BenchHost.fax_signal(rate, BenchHost.block_size);
+        big_endian = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+        bytes = new byte[sig.length * 2];
+        ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder()).asShortBuffer().put(sig);
+        short_block = new short[sig.length];
+        block = new double[sig.length];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double[] short_buffer_copy() {
+        ShortBuffer sb = ByteBuffer.wrap(bytes).asShortBuffer();
+        sb.get(short_block);
+        for (int i = 0; i < short_block.length; i++) {
+            block[i] = short_block[i];
+        }
+        return block;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double[] pcm_decode() {
+        PcmCodec.decode(bytes, block.length, 2, 0, big_endian, block);
+        return block;
+    }
+}
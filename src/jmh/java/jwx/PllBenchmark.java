@@ -0,0 +1,114 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the DecodeFax PLL with its original Math.sin() reference
+// against the NCO at several table sizes, table_bits = 0 is the
+// NCO's own Math.sin() mode
+//
+// setup prints how far each NCO's PLL output strays from the
+// original over 60 seconds of signal
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PllBenchmark {
+
+    @Param({"8000", "96000"})
+    public long rate;
+    @Param({"0", "8", "12", "16"})
+    public int table_bits;
+    @Param({"true", "false"})
+    public boolean interpolate;
+    final double pll_center_f = 1900.0;
+    final double pll_omega = 2 * Math.PI * pll_center_f;
+    double sampleinterval;
+    double[] block;
+    long sample_count;
+    double pll_integral, pll_reference;
+    NCO nco;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sampleinterval = 1.0 / rate;
+        short[] sig = BenchHost.fax_signal(rate, BenchHost.block_size);
+        block = new double[sig.length];
+        for (int i = 0; i < sig.length; i++) {
+            block[i] = sig[i] / 8000.0;
+        }
+        nco = new NCO(pll_center_f, rate, table_bits, interpolate);
+        report_accuracy();
+    }
+
+    private void report_accuracy() {
+        NCO n = new NCO(pll_center_f, rate, table_bits, interpolate);
+        BiQuadraticFilter fa = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 1.0 / Math.sqrt(2));
+        BiQuadraticFilter fb = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, 650, rate, 1.0 / Math.sqrt(2));
+        double ia = 0, ib = 0, ra = 0, rb = 0, max = 0, sum = 0;
+        long total = 60 * rate;
+        for (long i = 0; i < total; i++) {
+            double dv = block[(int) (i % block.length)];
+            double ca = dv * ra;
+            ia += ca * sampleinterval;
+            ra = Math.sin(pll_omega * (i * sampleinterval + ia));
+            double cb = dv * rb;
+            ib += cb * sampleinterval;
+            rb = n.next(pll_omega * cb * sampleinterval);
+            double d = Math.abs(fa.filter(ca) - fb.filter(cb));
+            max = Math.max(max, d);
+            sum += d * d;
+        }
+        CommonCode.p(String.format("%npll output deviation, rate %d, table_bits %d, interpolate %s: rms %.3e max %.3e",
+                rate, table_bits, interpolate, Math.sqrt(sum / total), max));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double math_sin_pll() {
+        for (double dv : block) {
+            double time_sec = sample_count * sampleinterval;
+            double pll_loop_control = dv * pll_reference;
+            pll_integral += pll_loop_control * sampleinterval;
+            pll_reference = Math.sin(pll_omega * (time_sec + pll_integral));
+            sample_count++;
+        }
+        return pll_reference;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public double nco_pll() {
+        for (double dv : block) {
+            double pll_loop_control = dv * pll_reference;
+            pll_integral += pll_loop_control * sampleinterval;
+            pll_reference = nco.next(pll_omega * pll_loop_control * sampleinterval);
+        }
+        return pll_reference;
+    }
+}
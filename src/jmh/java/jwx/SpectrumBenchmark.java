@@ -0,0 +1,69 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the spectrum view: a bare real transform of the size the analyzer
+// picks for the rate, and a whole frame, window to dB
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpectrumBenchmark {
+
+    @Param({"8000", "48000"})
+    public long rate;
+    SpectrumAnalyzer analyzer;
+    double[] samples;
+    double[] work;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        analyzer = new SpectrumAnalyzer(new SpectrumPanel(), rate, 10);
+        int n = analyzer.work.length;
+        samples = new double[n];
+        short[] sig = BenchHost.fax_signal(rate, n);
+        for (int i = 0; i < n; i++) {
+            samples[i] = sig[i] * PcmCodec.inv_full_scale;
+        }
+        work = new double[n];
+    }
+
+    @Benchmark
+    public double[] transform_frame() {
+        System.arraycopy(samples, 0, work, 0, work.length);
+        analyzer.fft.transform(work);
+        return work;
+    }
+
+    @Benchmark
+    public double[] spectrum_frame() {
+        analyzer.ring.write(samples, 0, samples.length);
+        return analyzer.frame();
+    }
+}
@@ -0,0 +1,108 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the decoder's block stages one at a time, per sample at the
+// internal rates, built the way DecodeFax.setup() builds them
+//
+// the demodulator works in place, so demod copies its input back
+// first, the copy is a small part of its time; front_end is the
+// three stages in order, as process_data runs them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+    @Param({"8000", "11025", "16000"})
+    public long rate;
+    @Param({"pll", "quadrature"})
+    public String demod;
+    final SampleBlock block = new SampleBlock();
+    double[] input, normalized;
+    AgcStage agc;
+    DemodStage demod_stage;
+    OutputFilterStage filters;
+    BlockStage[] stages;
+    ToneDetectorBank tones;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        short[] sig = BenchHost.fax_signal(rate, BenchHost.block_size);
+        input = new double[sig.length];
+        for (int i = 0; i < sig.length; i++) {
+            input[i] = sig[i] * PcmCodec.inv_full_scale;
+        }
+        BenchHost host = new BenchHost(rate);
+        agc = new AgcStage(rate, 0);
+        demod_stage = new DemodStage(Demodulator.create(demod, 1900, rate, host));
+        filters = new OutputFilterStage(rate, 650, 400, 1.2 * 1900 / 400);
+        stages = new BlockStage[]{agc, demod_stage, filters};
+        tones = new ToneDetectorBank(new double[]{300.0 / rate, 675.0 / rate, 450.0 / rate}, rate / 4.0, 0.5);
+        block.set(input, 0, input.length);
+        for (BlockStage s : stages) {
+            s.process(block);
+        }
+        agc.process(block);
+        normalized = block.demod.clone();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void agc() {
+        agc.process(block);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void demod() {
+        System.arraycopy(normalized, 0, block.demod, 0, block.len);
+        demod_stage.process(block);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void filters() {
+        filters.process(block);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void tones() {
+        tones.process(block.wsig, 0, block.len);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchHost.block_size)
+    public void front_end() {
+        for (BlockStage s : stages) {
+            s.process(block);
+        }
+    }
+}
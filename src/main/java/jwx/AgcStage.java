@@ -0,0 +1,52 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// automatic gain control: the average input level over a time
+// constant, and the input divided by it
+final class AgcStage implements BlockStage {
+
+    final double gain_tc;
+    final double gain_floor = .1 * PcmCodec.inv_full_scale;
+    double level;
+
+    AgcStage(long sample_rate, double level) {
+        gain_tc = 1000.0 / sample_rate;
+        this.level = level;
+    }
+
+    @Override
+    public void process(SampleBlock b) {
+        final double[] in = b.in, gain = b.gain, out = b.demod;
+        final int off = b.off;
+        double g = level;
+        for (int i = 0; i < b.len; i++) {
+            double dv = in[off + i];
+            g += (Math.abs(dv) - g) * gain_tc;
+            g = Math.max(gain_floor, g);
+            gain[i] = g;
+            out[i] = dv / g;
+        }
+        level = g;
+    }
+}
@@ -38,6 +38,12 @@
  * buffer, i.e. there is no chance of blocking. Call available() and
  * sleep if available data is less than the bufffer size.
  *
+ * The poll sleeps a quarter of a capture block ("capture_block_ms"),
+ * which is smaller than the old fixed 4096 samples, so latency and
+ * idle wakeups don't depend on the sample rate. Where read() blocks
+ * properly, "capture_blocking" = true in JWX.ini skips the polling and
+ * lets read() wait for each block; it is off by default because of 2.
+ *
  *
  */
 package jwx;
@@ -46,8 +52,6 @@ import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.TargetDataLine;
-import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
 
 /**
  *
@@ -60,20 +64,22 @@ final class AudioInputReader extends Thread {
     TargetDataLine targetDataLine = null;
     double dv;
     final int mask = 0xff;
-    final short[] short_buf;
+    // one ring per capture channel
+    final SampleRing[] rings;
     final byte[] byte_buf;
     final int word_size;
     int avail;
     // reset audio stream once per hour when idle
     final double restart_cycle_time_sec = 3600;
 
-    public AudioInputReader(AudioProcessor ap, JWX p, int ws) {
+    public AudioInputReader(AudioProcessor ap, JWX p, int ws, SampleRing[] r) {
         audio_processor = ap;
         parent = p;
         word_size = ws;
         //sbufsz = bbufsz / 2;
-        byte_buf = new byte[audio_processor.bbufsz];
-        short_buf = new short[audio_processor.sbufsz];
+        byte_buf = new byte[audio_processor.capture_bytes];
+        rings = r;
+        setName("jwx-capture");
     }
 
     private void open_target_line() {
@@ -90,7 +96,7 @@ final class AudioInputReader extends Thread {
                 Mixer mixer = AudioSystem.getMixer(mi);
                 targetDataLine = (TargetDataLine) mixer.getLine(audio_processor.targetLineInfo);
                 // provide the desired buffer size
-                targetDataLine.open(audio_processor.audioFormat, audio_processor.bbufsz * 2);
+                targetDataLine.open(audio_processor.audioFormat, audio_processor.line_buffer_bytes);
                 targetDataLine.start();
             }
         } catch (LineUnavailableException e) {
@@ -100,6 +106,14 @@ final class AudioInputReader extends Thread {
         }
     }
 
+    // release a read() blocked on a stalled line
+    public void abort_read() {
+        TargetDataLine line = targetDataLine;
+        if (line != null) {
+            line.flush();
+        }
+    }
+
     private void close_target_line() {
         if (targetDataLine != null) {
             targetDataLine.stop();
@@ -113,7 +127,7 @@ final class AudioInputReader extends Thread {
     // if not receiving a fax, and if time > max_time
     // then restart the audio stream
     public void restart_stream_test() {
-        if (parent.decode_fax.time_sec > parent.reset_target_time && !parent.decode_fax.receiving_fax()) {
+        if (parent.decode_fax.time_sec > parent.reset_target_time && !parent.receiving_any()) {
             if (parent.debug) {
                 CommonCode.p(getClass().getSimpleName() + ": restarting target audio line");
             }
@@ -130,22 +144,39 @@ final class AudioInputReader extends Thread {
         audio_processor.read_enable = true;
         parent.reset_target_time = -1;
         restart_stream_test();
+        int block = byte_buf.length;
+        // poll about four times per block
+        long poll_ms = Math.max(1, audio_processor.capture_ms() / 4);
         try {
             while (targetDataLine != null && audio_processor.read_enable) {
-                // wait until full buffer length of data is available
-                // before calling read()
-                while (audio_processor.read_enable && (avail = targetDataLine.available()) < audio_processor.bbufsz && avail >= 0) {
-                    Thread.sleep(20);
+                if (!audio_processor.capture_blocking) {
+                    // wait until full buffer length of data is available
+                    // before calling read()
+                    while (audio_processor.read_enable && (avail = targetDataLine.available()) < block && avail >= 0) {
+                        Thread.sleep(poll_ms);
+                    }
                 }
                 if (audio_processor.read_enable) {
-                    // process the acquired audio data
-                    parent.audio_read = targetDataLine.read(byte_buf, 0, audio_processor.bbufsz);
+                    // process the acquired audio data, in blocking
+                    // mode read() waits for the whole block
+                    parent.audio_read = targetDataLine.read(byte_buf, 0, block);
                     if (parent.audio_read > 0) {
-                        ShortBuffer sb = ByteBuffer.wrap(byte_buf).asShortBuffer();
-                        sb.get(short_buf);
-                        parent.decode_fax.process_data(short_buf);
-                        if (audio_processor.write_valid) {
-                            audio_processor.write_output(short_buf);
+                        // one pass from the line's bytes to normalized
+                        // samples in each channel's ring, decoding
+                        // happens elsewhere
+                        int frame_size = audio_processor.audioFormat.getFrameSize();
+                        boolean big_endian = audio_processor.audioFormat.isBigEndian();
+                        int frames = parent.audio_read / frame_size;
+                        for (int c = 0; c < rings.length; c++) {
+                            SampleRing ring = rings[c];
+                            if (ring.write_pcm(byte_buf, frames, frame_size, c * word_size, big_endian)) {
+                                SpectrumAnalyzer sa = audio_processor.spectrum;
+                                if (c == 0 && sa != null) {
+                                    sa.feed(ring, frames);
+                                }
+                            } else if (parent.debug) {
+                                CommonCode.p(getClass().getSimpleName() + ": ring " + c + " overrun, " + ring.overruns() + " total");
+                            }
                         }
                     }
                 }
@@ -20,7 +20,7 @@
 package jwx;
 
 import javax.sound.sampled.*;
-import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  *
@@ -35,8 +35,25 @@ final public class AudioProcessor {
     final int word_size = 2;
     final int sbufsz = 4096;
     final int bbufsz = sbufsz * word_size;
-    boolean read_enable = false;
+    volatile boolean read_enable = false;
+    // capture block and target line buffer sizes in bytes,
+    // set from the capture settings when reading starts
+    int capture_bytes = bbufsz;
+    int line_buffer_bytes = bbufsz * 2;
+    boolean capture_blocking = false;
     AudioInputReader audio_reader = null;
+    // capture channels, each with its own ring and decoder thread,
+    // channel 0 is the main decoder
+    int channels = 1;
+    final int max_channels = 8;
+    DecodeThread[] decode_threads = new DecodeThread[0];
+    // seconds of audio the capture ring can hold while decoding stalls
+    final double ring_seconds = 4.0;
+    SampleRing[] rings = new SampleRing[0];
+    // hosts of the decoders on channels 1 .. channels-1
+    volatile java.util.List<ChannelHost> channel_hosts = java.util.Collections.emptyList();
+    // live spectrum of the capture stream, null when turned off
+    SpectrumAnalyzer spectrum = null;
     final byte[] out_buffer = new byte[bbufsz];
     final Line.Info targetLineInfo;
     final Line.Info sourceLineInfo;
@@ -85,19 +102,65 @@ final public class AudioProcessor {
     }
 
     public void enable_audio_read(boolean enable) {
-        audioFormat = createAudioFormat();
+        if (enable) {
+            channels = Math.max(1, Math.min(max_channels, parent.capture_channels.get_value()));
+        }
+        audioFormat = createAudioFormat(channels);
         target_mixer_index = parent.audio_input.get_value() - 1;
         read_enable = enable;
         if (enable) {
-            audio_reader = new AudioInputReader(this, parent, word_size);
+            set_capture_sizes();
+            java.util.List<ChannelHost> hosts = parent.channel_hosts(channels);
+            rings = new SampleRing[channels];
+            decode_threads = new DecodeThread[channels];
+            for (int c = 0; c < channels; c++) {
+                rings[c] = new SampleRing((int) (audioFormat.getSampleRate() * ring_seconds));
+                DecodeFax df = (c == 0) ? parent.decode_fax : hosts.get(c - 1).decode_fax;
+                if (c > 0) {
+                    hosts.get(c - 1).start();
+                }
+                // only the main channel goes to the monitor output
+                decode_threads[c] = new DecodeThread(df, rings[c], sbufsz, (c == 0) ? this : null);
+                decode_threads[c].setName("jwx-decode-" + c);
+            }
+            channel_hosts = hosts;
+            for (DecodeThread dt : decode_threads) {
+                dt.start();
+            }
+            double fps = parent.spectrum_fps.get_dvalue();
+            if (fps > 0) {
+                spectrum = new SpectrumAnalyzer(parent.spectrum_panel, audioFormat.getSampleRate(), fps);
+                spectrum.start();
+            }
+            audio_reader = new AudioInputReader(this, parent, word_size, rings);
             audio_reader.start();
         } else {
             try {
                 if (audio_reader != null) {
                     read_enable = false;
-                    audio_reader.join();
+                    // a blocked read returns within one capture block,
+                    // unless the line has stalled
+                    audio_reader.join(capture_ms() + 500);
+                    if (audio_reader.isAlive()) {
+                        audio_reader.abort_read();
+                        audio_reader.join();
+                    }
                     audio_reader = null;
                 }
+                for (DecodeThread dt : decode_threads) {
+                    dt.shutdown();
+                }
+                decode_threads = new DecodeThread[0];
+                // the channel decoders save what they have, as the
+                // main one does when it is disabled
+                for (ChannelHost host : channel_hosts) {
+                    host.stop();
+                }
+                channel_hosts = java.util.Collections.emptyList();
+                if (spectrum != null) {
+                    spectrum.shutdown();
+                    spectrum = null;
+                }
             } catch (InterruptedException e) {
                 CommonCode.p("join audio thread: " + e);
                 read_enable = false;
@@ -106,6 +169,25 @@ final public class AudioProcessor {
         enable_audio_write(enable && parent.monitor_volume.get_value() != 0);
     }
 
+    // block and line buffer sizes follow the sample rate, so latency
+    // and wakeups per second are the same at any rate
+    private void set_capture_sizes() {
+        double rate = audioFormat.getSampleRate();
+        int frame = audioFormat.getFrameSize();
+        // the decoder thread takes at most sbufsz samples at once
+        int frames = (int) Math.round(rate * parent.capture_block_ms.get_dvalue() / 1000.0);
+        frames = Math.max(64, Math.min(sbufsz, frames));
+        capture_bytes = frames * frame;
+        int line_frames = (int) Math.round(rate * parent.capture_buffer_ms.get_dvalue() / 1000.0);
+        line_buffer_bytes = Math.max(capture_bytes * 2, line_frames * frame);
+        capture_blocking = parent.capture_blocking.is_true();
+    }
+
+    // duration of one capture block
+    long capture_ms() {
+        return (long) Math.ceil(1000.0 * capture_bytes / (audioFormat.getFrameSize() * audioFormat.getSampleRate()));
+    }
+
     private void close_source_line() {
         if (audioOutputLine != null) {
             audioOutputLine.flush();
@@ -118,7 +200,8 @@ final public class AudioProcessor {
     private boolean open_source_line() {
         try {
             close_source_line();
-            audioFormat = createAudioFormat();
+            // the monitor plays the main channel only
+            AudioFormat out_format = createAudioFormat(1);
             Mixer.Info mi;
             try {
                 mi = source_mixer_list.get(new_index);
@@ -128,7 +211,7 @@ final public class AudioProcessor {
             }
             Mixer mixer = AudioSystem.getMixer(mi);
             audioOutputLine = (SourceDataLine) mixer.getLine(sourceLineInfo);
-            audioOutputLine.open(audioFormat);
+            audioOutputLine.open(out_format);
             audioOutputLine.start();
             return true;
         } catch (LineUnavailableException e) {
@@ -162,15 +245,33 @@ final public class AudioProcessor {
         }
     }
 
+    // capture blocks dropped because decoding fell behind, all channels
+    public long overruns() {
+        long n = 0;
+        for (SampleRing r : rings) {
+            n += r.overruns();
+        }
+        return n;
+    }
+
+    // the fullest any capture ring has been, 0 to 1
+    public double ring_high_water() {
+        double v = 0;
+        for (SampleRing r : rings) {
+            v = Math.max(v, (double) r.high_water() / r.capacity());
+        }
+        return v;
+    }
+
     public boolean reading() {
         return read_enable;
     }
 
-    AudioFormat createAudioFormat() {
+    AudioFormat createAudioFormat(int channels) {
         int sampleSizeInBits = 8 * word_size;
-        int channels = 1;
         boolean signed = true;
-        boolean bigEndian = true;
+        // the line's native order, so the driver need not swap bytes
+        boolean bigEndian = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
         float rate = parent.data_rate.get_value();
         return new AudioFormat(
                 rate,
@@ -180,13 +281,10 @@ final public class AudioProcessor {
                 bigEndian);
     }
 
-    public void write_output(short[] data) {
+    public void write_output(double[] data, int off, int len) {
         double gain = parent.monitor_volume.get_percent_value();
-        ByteBuffer byb = ByteBuffer.wrap(out_buffer);
         // must loop through because of gain setting
-        for (short sv : data) {
-            byb.putShort((short) (sv * gain));
-        }
-        audioOutputLine.write(out_buffer, 0, out_buffer.length);
+        int n = PcmCodec.encode(data, off, len, gain, audioFormat.isBigEndian(), out_buffer);
+        audioOutputLine.write(out_buffer, 0, n);
     }
 }
@@ -0,0 +1,208 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// several BiQuadraticFilter sections run in series, each sample
+// passes through a pair of sections in one loop
+//
+// h1[k], h2[k] hold the last two values at node k: node 0 is the
+// input, node k the output of section k, so adjacent sections share
+// state instead of each keeping its own copy of x1, x2, y1, y2
+final public class BiQuadraticCascade {
+
+    final int sections;
+    final double[] c0, c1, c2, d1, d2;
+    final double[] h1, h2;
+    // node state at the start of a block, a pair must not see the
+    // end-of-block state the previous pair leaves on their shared node
+    final double[] s1, s2;
+
+    public BiQuadraticCascade(BiQuadraticFilter... filters) {
+        sections = filters.length;
+        c0 = new double[sections];
+        c1 = new double[sections];
+        c2 = new double[sections];
+        d1 = new double[sections];
+        d2 = new double[sections];
+        for (int k = 0; k < sections; k++) {
+            double[] c = filters[k].constants();
+            c0[k] = c[0];
+            c1[k] = c[1];
+            c2[k] = c[2];
+            d1[k] = c[3];
+            d2[k] = c[4];
+        }
+        h1 = new double[sections + 1];
+        h2 = new double[sections + 1];
+        s1 = new double[sections + 1];
+        s2 = new double[sections + 1];
+    }
+
+    // a Butterworth lowpass of the given (even) order
+    public static BiQuadraticCascade butterworth_lowpass(int order, double cf, double sample_rate) {
+        int n = Math.max(1, order / 2);
+        BiQuadraticFilter[] f = new BiQuadraticFilter[n];
+        for (int k = 0; k < n; k++) {
+            double q = 1.0 / (2 * Math.cos(Math.PI * (2 * k + 1) / (4.0 * n)));
+            f[k] = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, cf, sample_rate, q);
+        }
+        return new BiQuadraticCascade(f);
+    }
+
+    public void reset() {
+        for (int k = 0; k <= sections; k++) {
+            h1[k] = h2[k] = 0;
+        }
+    }
+
+    public double filter(double x) {
+        final double[] lh1 = h1, lh2 = h2;
+        double v = x;
+        for (int k = 0; k < sections; k++) {
+            double w = c0[k] * v + c1[k] * lh1[k] + c2[k] * lh2[k] - d1[k] * lh1[k + 1] - d2[k] * lh2[k + 1];
+            lh2[k] = lh1[k];
+            lh1[k] = v;
+            v = w;
+        }
+        lh2[sections] = lh1[sections];
+        lh1[sections] = v;
+        return v;
+    }
+
+    // in and out may be the same array
+    //
+    // sections run in fused pairs with all state in locals, the
+    // two recursions are independent so the CPU overlaps them
+    public void filter(double[] in, double[] out, int off, int len) {
+        System.arraycopy(h1, 0, s1, 0, sections + 1);
+        System.arraycopy(h2, 0, s2, 0, sections + 1);
+        double[] src = in;
+        int k = 0;
+        for (; k + 1 < sections; k += 2) {
+            filter_pair(k, src, out, off, len);
+            src = out;
+        }
+        if (k < sections) {
+            filter_single(k, src, out, off, len);
+        }
+    }
+
+    private void filter_pair(int k, double[] in, double[] out, int off, int len) {
+        final double a0 = c0[k], a1 = c1[k], a2 = c2[k], a3 = d1[k], a4 = d2[k];
+        final double b0 = c0[k + 1], b1 = c1[k + 1], b2 = c2[k + 1], b3 = d1[k + 1], b4 = d2[k + 1];
+        double x1 = s1[k], x2 = s2[k], u1 = s1[k + 1], u2 = s2[k + 1], v1 = s1[k + 2], v2 = s2[k + 2];
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = in[i];
+            double u = a0 * x + a1 * x1 + a2 * x2 - a3 * u1 - a4 * u2;
+            double v = b0 * u + b1 * u1 + b2 * u2 - b3 * v1 - b4 * v2;
+            x2 = x1;
+            x1 = x;
+            u2 = u1;
+            u1 = u;
+            v2 = v1;
+            v1 = v;
+            out[i] = v;
+        }
+        h1[k] = x1;
+        h2[k] = x2;
+        h1[k + 1] = u1;
+        h2[k + 1] = u2;
+        h1[k + 2] = v1;
+        h2[k + 2] = v2;
+    }
+
+    private void filter_single(int k, double[] in, double[] out, int off, int len) {
+        final double a0 = c0[k], a1 = c1[k], a2 = c2[k], a3 = d1[k], a4 = d2[k];
+        double x1 = s1[k], x2 = s2[k], u1 = s1[k + 1], u2 = s2[k + 1];
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = in[i];
+            double u = a0 * x + a1 * x1 + a2 * x2 - a3 * u1 - a4 * u2;
+            x2 = x1;
+            x1 = x;
+            u2 = u1;
+            u1 = u;
+            out[i] = u;
+        }
+        h1[k] = x1;
+        h2[k] = x2;
+        h1[k + 1] = u1;
+        h2[k + 1] = u2;
+    }
+
+    // single precision samples, the arithmetic stays in double
+    public void filter(float[] in, float[] out, int off, int len) {
+        System.arraycopy(h1, 0, s1, 0, sections + 1);
+        System.arraycopy(h2, 0, s2, 0, sections + 1);
+        float[] src = in;
+        int k = 0;
+        for (; k + 1 < sections; k += 2) {
+            filter_pair(k, src, out, off, len);
+            src = out;
+        }
+        if (k < sections) {
+            filter_single(k, src, out, off, len);
+        }
+    }
+
+    private void filter_pair(int k, float[] in, float[] out, int off, int len) {
+        final double a0 = c0[k], a1 = c1[k], a2 = c2[k], a3 = d1[k], a4 = d2[k];
+        final double b0 = c0[k + 1], b1 = c1[k + 1], b2 = c2[k + 1], b3 = d1[k + 1], b4 = d2[k + 1];
+        double x1 = s1[k], x2 = s2[k], u1 = s1[k + 1], u2 = s2[k + 1], v1 = s1[k + 2], v2 = s2[k + 2];
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = in[i];
+            double u = a0 * x + a1 * x1 + a2 * x2 - a3 * u1 - a4 * u2;
+            double v = b0 * u + b1 * u1 + b2 * u2 - b3 * v1 - b4 * v2;
+            x2 = x1;
+            x1 = x;
+            u2 = u1;
+            u1 = u;
+            v2 = v1;
+            v1 = v;
+            out[i] = (float) v;
+        }
+        h1[k] = x1;
+        h2[k] = x2;
+        h1[k + 1] = u1;
+        h2[k + 1] = u2;
+        h1[k + 2] = v1;
+        h2[k + 2] = v2;
+    }
+
+    private void filter_single(int k, float[] in, float[] out, int off, int len) {
+        final double a0 = c0[k], a1 = c1[k], a2 = c2[k], a3 = d1[k], a4 = d2[k];
+        double x1 = s1[k], x2 = s2[k], u1 = s1[k + 1], u2 = s2[k + 1];
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = in[i];
+            double u = a0 * x + a1 * x1 + a2 * x2 - a3 * u1 - a4 * u2;
+            x2 = x1;
+            x1 = x;
+            u2 = u1;
+            u1 = u;
+            out[i] = (float) u;
+        }
+        h1[k] = x1;
+        h2[k] = x2;
+        h1[k + 1] = u1;
+        h2[k + 1] = u2;
+    }
+}
@@ -181,4 +181,45 @@ final public class BiQuadraticFilter {
         y1 = y;
         return (y);
     }
+
+    // filter a block, same result as calling filter(double) for each
+    // sample but with the state held in locals, in and out may be the same array
+    public void filter(double[] in, double[] out, int off, int len) {
+        final double c0 = b0, c1 = b1, c2 = b2, d1 = a1, d2 = a2;
+        double lx1 = x1, lx2 = x2, ly1 = y1, ly2 = y2, ly = y;
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = in[i];
+            ly = c0 * x + c1 * lx1 + c2 * lx2 - d1 * ly1 - d2 * ly2;
+            lx2 = lx1;
+            lx1 = x;
+            ly2 = ly1;
+            ly1 = ly;
+            out[i] = ly;
+        }
+        x1 = lx1;
+        x2 = lx2;
+        y1 = ly1;
+        y2 = ly2;
+        y = ly;
+    }
+
+    // single precision samples, the arithmetic stays in double
+    public void filter(float[] in, float[] out, int off, int len) {
+        final double c0 = b0, c1 = b1, c2 = b2, d1 = a1, d2 = a2;
+        double lx1 = x1, lx2 = x2, ly1 = y1, ly2 = y2, ly = y;
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = in[i];
+            ly = c0 * x + c1 * lx1 + c2 * lx2 - d1 * ly1 - d2 * ly2;
+            lx2 = lx1;
+            lx1 = x;
+            ly2 = ly1;
+            ly1 = ly;
+            out[i] = (float) ly;
+        }
+        x1 = lx1;
+        x2 = lx2;
+        y1 = ly1;
+        y2 = ly2;
+        y = ly;
+    }
 }
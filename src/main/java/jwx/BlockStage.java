@@ -0,0 +1,35 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// one pass of the decoder over a whole SampleBlock, reading the
+// arrays the stages before it filled and filling its own
+//
+// the stages run in order AGC, demodulator, output filters, then
+// DecodeFax runs tone detection and the machine states, which
+// depend on each other, and take the line timing from the sample
+// count; a stage keeps no reference to the block
+interface BlockStage {
+
+    void process(SampleBlock b);
+}
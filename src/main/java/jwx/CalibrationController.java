@@ -30,7 +30,7 @@ final public class CalibrationController implements ControlInterface {
     final JWX parent;
     final JTextField field;
     private String value;
-    private double dvalue = 0;
+    private volatile double dvalue = 0;
 
     public CalibrationController(JTextField f, String s, JWX p) {
         parent = p;
@@ -91,6 +91,15 @@ final public class CalibrationController implements ControlInterface {
         set_value("" + v);
     }
 
+    // a value from the decoder thread, readable at once, shown
+    // when the event thread gets to it
+    public void set_auto_value(double v) {
+        dvalue = v;
+        String s = String.format("%.4e", v);
+        value = s;
+        SwingUtilities.invokeLater(() -> field.setText(s));
+    }
+
     @Override
     public String toString() {
         return value;
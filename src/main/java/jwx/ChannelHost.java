@@ -0,0 +1,153 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the host of the decoder on an extra capture channel: channel 0
+// belongs to JWX itself, channels 1 .. n-1 each get one of these
+// with their own decoder, chart stream and calibration value, and
+// share the rest of the settings with the main window
+//
+// capture is started and stopped by the main decoder, so the
+// channel decoders never switch the input themselves
+final class ChannelHost implements DecodeHost {
+
+    final JWX parent;
+    final int channel;
+    final DecodeFax decode_fax;
+    private volatile double calibration;
+
+    public ChannelHost(JWX p, int ch) {
+        parent = p;
+        channel = ch;
+        calibration = parent.get_channel_calibration(ch);
+        decode_fax = new DecodeFax(this);
+    }
+
+    // channel numbers start at 1 for the user
+    public String label() {
+        return "ch" + (channel + 1);
+    }
+
+    public void start() {
+        decode_fax.init_chart_read(true);
+    }
+
+    public void stop() {
+        decode_fax.init_chart_read(false);
+    }
+
+    @Override
+    public long get_sample_rate() {
+        return parent.get_sample_rate();
+    }
+
+    @Override
+    public double get_calibration() {
+        return calibration;
+    }
+
+    @Override
+    public int get_lines_per_minute() {
+        return parent.get_lines_per_minute();
+    }
+
+    @Override
+    public int get_ioc() {
+        return parent.get_ioc();
+    }
+
+    @Override
+    public boolean get_grayscale() {
+        return parent.get_grayscale();
+    }
+
+    @Override
+    public boolean get_video_filter() {
+        return parent.get_video_filter();
+    }
+
+    @Override
+    public int get_nco_table_bits() {
+        return parent.get_nco_table_bits();
+    }
+
+    @Override
+    public boolean get_nco_interpolate() {
+        return parent.get_nco_interpolate();
+    }
+
+    @Override
+    public boolean get_sync_tracking() {
+        return parent.get_sync_tracking();
+    }
+
+    @Override
+    public boolean get_decimate() {
+        return parent.get_decimate();
+    }
+
+    @Override
+    public boolean get_float_dsp() {
+        return parent.get_float_dsp();
+    }
+
+    @Override
+    public String get_demodulator() {
+        return parent.get_demodulator();
+    }
+
+    @Override
+    public boolean get_auto_calibrate() {
+        return parent.get_auto_calibrate();
+    }
+
+    @Override
+    public void set_auto_calibration(double cal_val) {
+        if (parent.debug) {
+            CommonCode.p(String.format("%s auto calibration %.4e", label(), cal_val));
+        }
+        calibration = cal_val;
+        parent.set_channel_calibration(channel, cal_val);
+    }
+
+    @Override
+    public ChartSink new_chart(int width, double cal_val) {
+        String name = parent.create_date_time_filename().replaceFirst("\\.png$", "_" + label() + ".png");
+        return parent.new_chart(parent.chart_path + parent.file_sep + name, width, cal_val);
+    }
+
+    @Override
+    public void cancel_calibrate() {
+        // the calibration dialog belongs to the main decoder
+    }
+
+    @Override
+    public void enable_input(boolean enable) {
+        // capture follows the main decoder
+    }
+
+    @Override
+    public void tell_user(String message, String title) {
+        parent.tell_user(message, title);
+    }
+}
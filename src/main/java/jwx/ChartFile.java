@@ -0,0 +1,65 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a ChartSink that writes straight to disk, no display
+final public class ChartFile implements ChartSink {
+
+    final ChartImage chart;
+
+    public ChartFile(String path, int width, double cal_val) {
+        chart = new ChartImage(path, width, cal_val);
+        try {
+            chart.start_stream();
+        } catch (IOException e) {
+            CommonCode.p("chart file: " + e);
+        }
+    }
+
+    @Override
+    public void begin_line() {
+        chart.begin_line();
+    }
+
+    @Override
+    public void put_pixel(int x, byte v) {
+        chart.put_pixel(x, v);
+    }
+
+    @Override
+    public void end_line() {
+        chart.end_line();
+    }
+
+    @Override
+    public void refresh() {
+    }
+
+    @Override
+    public void finish(double quality) {
+        chart.update_image(false);
+        chart.finish(quality);
+    }
+}
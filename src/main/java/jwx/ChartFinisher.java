@@ -0,0 +1,110 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author mgrouch
+ */
+// writes finished charts on a thread of its own, so the decoder
+// that received a chart goes straight back to the audio, which is
+// when the next broadcast tends to start
+//
+// a job only touches what ChartImage.finish() handed it, the rest
+// of a PNG stream or a copy of the rows, never the chart itself;
+// at most queue_limit jobs wait, past that the decoder writes the
+// chart itself rather than holding any more copies in memory
+//
+// every job logs its write time and the jobs still waiting
+final class ChartFinisher {
+
+    static final int queue_limit = 4;
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue_limit),
+            r -> {
+                Thread t = new Thread(r, "jwx-chart-finisher");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    // jobs handed over and not yet written
+    private static int pending = 0;
+    // jobs done and written by the caller, and write times
+    static volatile int jobs = 0;
+    static volatile int caller_runs = 0;
+    static volatile double last_ms = 0;
+    static volatile double max_ms = 0;
+    static volatile int max_depth = 0;
+
+    private ChartFinisher() {
+    }
+
+    static Future<?> submit(String name, Runnable job) {
+        synchronized (ChartFinisher.class) {
+            pending++;
+            max_depth = Math.max(max_depth, queue_depth());
+        }
+        Thread caller = Thread.currentThread();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            long start = System.nanoTime();
+            try {
+                job.run();
+            } finally {
+                record(name, (System.nanoTime() - start) * 1e-6, Thread.currentThread() == caller);
+            }
+        }, null);
+        executor.execute(task);
+        return task;
+    }
+
+    // jobs waiting, not counting the one being written
+    static int queue_depth() {
+        return executor.getQueue().size();
+    }
+
+    // wait for every chart handed over so far to be written
+    static synchronized void drain() {
+        try {
+            while (pending > 0) {
+                ChartFinisher.class.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized void record(String name, double ms, boolean by_caller) {
+        pending--;
+        ChartFinisher.class.notifyAll();
+        jobs++;
+        if (by_caller) {
+            caller_runs++;
+        }
+        last_ms = ms;
+        max_ms = Math.max(max_ms, ms);
+        CommonCode.p(String.format("chart %s written in %.1f ms%s, %d waiting",
+                name, ms, by_caller ? " by the decoder, queue full" : "", queue_depth()));
+    }
+}
@@ -0,0 +1,461 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the chart raster and its file, without any Swing dependency,
+// shared by ImagePanel and the headless FileDecoder
+//
+// a PNG chart being received is written as it arrives, see
+// PngWriter, so finishing it only writes the last rows; charts
+// loaded from a file, edited or in JPEG are written whole; the
+// rows received may also go to a ChartJournal until the chart is
+// finished and on disk; finishing a chart hands the writing to the
+// ChartFinisher, which then adds the chart to the ChartIndex of its
+// directory, if it has one
+//
+// a chart loaded from a file is kept in a MappedRaster, PNG charts
+// are read into it a row at a time, others a few bands at a time
+final public class ChartImage {
+
+    ChartRaster raster;
+    // rows per raster tile
+    final int tile_rows = 256;
+    // how many bands a non-PNG chart is decoded in, see load_bands()
+    static final int load_band_count = 4;
+    int height;
+    int width;
+    // rows already shown, and the first row of the last update
+    int old_line = 0;
+    int dirty_from = 0;
+    final File file;
+    final double calibration_val;
+    int translate_val = 0;
+    boolean changed = false;
+    // the line being received, see begin_line()
+    byte[] line_tile;
+    int line_offset;
+    int line_shift;
+    // the file written while the chart is received, null when not
+    // receiving or once an edit has made the rows on disk stale;
+    // the decoder thread adds rows, any thread may save
+    PngWriter stream;
+    // rows between flushes of the stream, 4 seconds at 120 LPM
+    final int stream_flush_rows = 8;
+    ChartJournal journal;
+    // the write finish() handed over, saves wait for it
+    Future<?> finishing;
+    // the archive index of the chart's directory, or null, and when
+    // reception started
+    ChartIndex index;
+    long start_ms;
+
+    public ChartImage(String path, int w, double cal_val) {
+        file = new File(path);
+        width = w;
+        calibration_val = cal_val;
+        raster = new ChartRaster(width, tile_rows);
+    }
+
+    public void load_file() {
+        try (PngReader png = PngReader.open(file)) {
+            if (png != null) {
+                load_rows(png);
+            } else {
+                load_bands();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            CommonCode.p("load file: " + e);
+        }
+    }
+
+    private void load_rows(PngReader png) throws IOException {
+        width = png.width;
+        raster.release();
+        raster = MappedRaster.create(width, tile_rows);
+        byte[] row = new byte[width];
+        for (int y = 0; png.read_row(row, 0); y++) {
+            raster.reserve(y);
+            raster.set_row(y, row, 0);
+            raster.commit_row();
+        }
+        update_image(true);
+        changed = false;
+    }
+
+    // JPEG and the rest have no row reader, they are decoded a band
+    // at a time straight into the raster; the JPEG reader decodes
+    // every band from the top again, so the bands are few and large
+    // rather than tile_rows high
+    private void load_bands() throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("not an image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int h = reader.getHeight(0);
+                width = reader.getWidth(0);
+                raster.release();
+                raster = MappedRaster.create(width, tile_rows);
+                int band = Math.max(tile_rows, (h + load_band_count - 1) / load_band_count);
+                for (int y0 = 0; y0 < h; y0 += band) {
+                    int n = Math.min(band, h - y0);
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, y0, width, n));
+                    byte[] b = gray_bytes(reader.read(0, param));
+                    for (int y = 0; y < n; y++) {
+                        raster.reserve(y0 + y);
+                        raster.set_row(y0 + y, b, y * width);
+                        raster.commit_row();
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        update_image(true);
+        changed = false;
+    }
+
+    // the band's own buffer when it is already gray, getData() would
+    // copy it; anything else is converted
+    private static byte[] gray_bytes(BufferedImage bi) {
+        if (bi.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            BufferedImage g = new BufferedImage(bi.getWidth(), bi.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            g.getGraphics().drawImage(bi, 0, 0, null);
+            bi = g;
+        }
+        return ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
+    }
+
+    // the chart is closed
+    public void release() {
+        raster.release();
+    }
+
+    static boolean is_png(File f) {
+        return f.getName().toLowerCase().endsWith(".png");
+    }
+
+    // a new chart is about to be received into the file
+    public void start_stream() throws IOException {
+        start_stream(false);
+    }
+
+    public synchronized void start_stream(boolean journaled) throws IOException {
+        start_ms = System.currentTimeMillis();
+        if (is_png(file)) {
+            stream = new PngWriter(file, width);
+        } else {
+            file.createNewFile();
+        }
+        if (journaled) {
+            try {
+                journal = new ChartJournal(file, width, calibration_val);
+            } catch (IOException e) {
+                CommonCode.p("chart journal: " + e);
+            }
+        }
+    }
+
+    // the chart is complete: the ChartFinisher ends the streamed
+    // file, or writes a copy of the rows if it was not streamed,
+    // then drops the journal if the chart is on disk, or leaves it
+    // to be recovered if not; the caller adds no more rows
+    public void finish() {
+        finish(Double.NaN);
+    }
+
+    // quality as in ChartSink.finish()
+    public synchronized void finish(double quality) {
+        PngWriter s = stream;
+        ChartJournal j = journal;
+        stream = null;
+        journal = null;
+        BufferedImage rows = (s == null && changed && height > 0) ? raster.to_image(height) : null;
+        ChartIndex ix = (index != null && index.covers(file) && height > 0) ? index : null;
+        int lines = height;
+        long start = start_ms;
+        changed = false;
+        finishing = ChartFinisher.submit(file.getName(), () -> {
+            boolean written = true;
+            try {
+                if (s != null) {
+                    s.close();
+                } else if (rows != null) {
+                    write_image(rows);
+                }
+            } catch (IOException e) {
+                CommonCode.p("finish chart: " + e);
+                written = false;
+                synchronized (this) {
+                    changed = true;
+                }
+            }
+            if (j != null) {
+                if (written) {
+                    j.finish();
+                } else {
+                    j.close();
+                }
+            }
+            if (written && ix != null) {
+                ix.add(new ChartIndex.Entry(file.getName(), start, System.currentTimeMillis(),
+                        lines, calibration_val, quality, file.length()));
+            }
+        });
+    }
+
+    // wait for the write finish() handed over
+    void await_finish() {
+        Future<?> f;
+        synchronized (this) {
+            f = finishing;
+        }
+        if (f != null) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                CommonCode.p("finish chart: " + e.getCause());
+            }
+        }
+    }
+
+    private void write_image(BufferedImage bi) throws IOException {
+        if (is_png(file)) {
+            PngWriter.write(file, bi);
+        } else {
+            ImageIO.write(bi, "jpg", file);
+        }
+    }
+
+    // the rows on disk no longer match the raster
+    private synchronized void drop_stream() {
+        if (stream != null) {
+            stream.abandon();
+            stream = null;
+        }
+        raster.edited();
+        changed = true;
+    }
+
+    public void save_file() {
+        await_finish();
+        synchronized (this) {
+            if (stream != null) {
+                // still receiving, bring the file up to date
+                try {
+                    stream.flush();
+                    changed = false;
+                } catch (IOException e) {
+                    CommonCode.p("save file: " + e);
+                }
+                return;
+            }
+        }
+        if (changed && height > 0) {
+            try {
+                if (is_png(file)) {
+                    PngWriter.write(file, raster, height);
+                } else {
+                    write_image(raster.to_image(height));
+                }
+                changed = false;
+                if (index != null) {
+                    index.saved(file, height);
+                }
+            } catch (IOException e) {
+                CommonCode.p("save file: " + e);
+            }
+        }
+    }
+
+    // make rows added since the last call part of the displayed image,
+    // the raster tiles are the image so nothing is copied; rows from
+    // dirty_from on need drawing, all of them if erase is set
+    //
+    // returns true if there is anything new to draw
+    public boolean update_image(boolean erase) {
+        height = raster.height;
+        if (erase) {
+            old_line = 0;
+        }
+        if (height > 0 && height > old_line) {
+            dirty_from = old_line;
+            old_line = height;
+            changed = true;
+            return true;
+        }
+        return false;
+    }
+
+    // combined alignment and clock correction for row y, the
+    // line is stored rotated left by this many pixels
+    private int line_shift(int y) {
+        int shift = translate_val;
+        if (calibration_val != 0.0) {
+            int p = (int) (width * calibration_val * y);
+            shift += (width * 32 + p) % width;
+        }
+        return shift % width;
+    }
+
+    public void add_line(byte[] line) {
+        int y = raster.height;
+        raster.reserve(y);
+        raster.set_row_shifted(y, line, line_shift(y));
+        raster.commit_row();
+        changed = true;
+        stream_row(y);
+    }
+
+    // receive a line a pixel at a time straight into the raster,
+    // the row only becomes part of the image at end_line()
+    public void begin_line() {
+        int y = raster.height;
+        raster.reserve(y);
+        line_tile = raster.tile(y);
+        line_offset = raster.offset(y);
+        line_shift = line_shift(y);
+        Arrays.fill(line_tile, line_offset, line_offset + width, (byte) 0);
+    }
+
+    public void put_pixel(int x, byte v) {
+        int i = x - line_shift;
+        if (i < 0) {
+            i += width;
+        }
+        line_tile[line_offset + i] = v;
+    }
+
+    public void end_line() {
+        int y = raster.commit_row();
+        changed = true;
+        stream_row(y);
+    }
+
+    private synchronized void stream_row(int y) {
+        if (journal != null) {
+            try {
+                journal.add_row(raster.tile(y), raster.offset(y));
+            } catch (IOException e) {
+                CommonCode.p("chart journal: " + e);
+                journal.close();
+                journal = null;
+            }
+        }
+        if (stream != null) {
+            try {
+                stream.add_row(raster.tile(y), raster.offset(y));
+                if (stream.rows % stream_flush_rows == 0) {
+                    stream.flush();
+                }
+            } catch (IOException e) {
+                // written whole when saved
+                CommonCode.p("chart stream: " + e);
+                drop_stream();
+            }
+        }
+    }
+
+    public void translate(int delta) {
+        drop_stream();
+        translate_val = (translate_val + delta + width * 8) % width;
+        int p = (width * 8 + delta) % width;
+        byte[] tmp = new byte[width];
+        for (int y = 0; y < raster.height; y++) {
+            raster.shift_row(y, p, tmp);
+        }
+    }
+
+    public void clock_correct(double delta) {
+        drop_stream();
+        delta *= width;
+        byte[] tmp = new byte[width];
+        for (int y = 0; y < raster.height; y++) {
+            int p = (int) (delta * y);
+            raster.shift_row(y, (width * 32 + p) % width, tmp);
+        }
+    }
+
+    public void invert() {
+        drop_stream();
+        for (int y = 0; y < raster.height; y++) {
+            byte[] t = raster.tile(y);
+            int o = raster.offset(y);
+            for (int i = o; i < o + width; i++) {
+                t[i] = (byte) (255 - t[i]);
+            }
+        }
+    }
+
+    public void rotate(boolean cw) {
+        drop_stream();
+        int h = raster.height;
+        ChartRaster dest = raster.like(h);
+        for (int y = 0; y < width; y++) {
+            dest.reserve(y);
+            dest.commit_row();
+        }
+        // walk the source a row at a time, each source row
+        // becomes a destination column
+        for (int r = 0; r < h; r++) {
+            byte[] t = raster.tile(r);
+            int o = raster.offset(r);
+            if (cw) {
+                int x = h - r - 1;
+                for (int y = 0; y < width; y++) {
+                    dest.tile(y)[dest.offset(y) + x] = t[o + y];
+                }
+            } else { // ccw
+                for (int c = 0; c < width; c++) {
+                    int y = width - c - 1;
+                    dest.tile(y)[dest.offset(y) + r] = t[o + c];
+                }
+            }
+        }
+        raster.release();
+        raster = dest;
+        height = width;
+        width = h;
+    }
+}
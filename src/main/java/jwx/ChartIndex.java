@@ -0,0 +1,376 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the archive index of a chart directory: what is known about each
+// chart, so listing, pruning and searching the archive reads one
+// small file rather than the directory and the images
+//
+// index.snap holds a line per chart as of the last compaction and
+// index.log a line per change since, appended and synced as they
+// happen: "+" and the fields of a chart added or replaced, "-" and
+// the name of one deleted, tab separated; opening reads the snapshot
+// and replays the log, a torn last line is dropped; once the log
+// has compact_records lines it is folded into a new snapshot, written
+// aside and renamed over the old one, and emptied
+//
+// a directory without an index is scanned once to start one, the
+// charts found get what their names and files tell, no line count,
+// calibration or quality
+//
+// java -cp jwx.jar jwx.ChartIndex dir [-hours n] [-quality q] [-compact]
+// lists the charts of the last n hours, of at least quality q
+final public class ChartIndex {
+
+    static final String snapshot_name = "index.snap";
+    static final String log_name = "index.log";
+    static final String header = "# jwx chart index 1";
+    static final int compact_records = 1000;
+    final File dir;
+    final File snapshot;
+    final File log_file;
+    final Map<String, Entry> entries = new LinkedHashMap<>();
+    Writer log;
+    FileOutputStream log_stream;
+    int log_records = 0;
+
+    static final class Entry {
+
+        final String name;
+        // reception start and end, ms since the epoch
+        final long start_ms;
+        final long end_ms;
+        // -1 if not known
+        final int lines;
+        // NaN if not known
+        final double calibration;
+        final double quality;
+        final long size;
+
+        Entry(String n, long start, long end, int l, double cal, double q, long sz) {
+            name = n;
+            start_ms = start;
+            end_ms = end;
+            lines = l;
+            calibration = cal;
+            quality = q;
+            size = sz;
+        }
+
+        String to_line() {
+            return String.join("\t", "+", name, Long.toString(start_ms), Long.toString(end_ms),
+                    Integer.toString(lines), Double.toString(calibration), Double.toString(quality),
+                    Long.toString(size));
+        }
+
+        // null if the fields don't parse
+        static Entry parse(String[] f) {
+            if (f.length != 8) {
+                return null;
+            }
+            try {
+                return new Entry(f[1], Long.parseLong(f[2]), Long.parseLong(f[3]), Integer.parseInt(f[4]),
+                        Double.parseDouble(f[5]), Double.parseDouble(f[6]), Long.parseLong(f[7]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s  %tF %<tT  %5.1f min  %5d lines  cal %s  quality %s  %d KB",
+                    name, start_ms, (end_ms - start_ms) / 60000.0, lines,
+                    Double.isNaN(calibration) ? "-" : String.format("%.4e", calibration),
+                    Double.isNaN(quality) ? "-" : String.format("%.2f", quality), size / 1024);
+        }
+    }
+
+    ChartIndex(File d) throws IOException {
+        dir = d;
+        snapshot = new File(dir, snapshot_name);
+        log_file = new File(dir, log_name);
+        boolean fresh = !snapshot.exists() && !log_file.exists();
+        boolean clean = true;
+        if (snapshot.exists()) {
+            clean = read(snapshot);
+        }
+        if (log_file.exists()) {
+            clean &= read(log_file);
+        }
+        if (fresh) {
+            import_dir();
+        }
+        if (fresh || !clean || log_records >= compact_records) {
+            // also leaves no torn line for the next record to follow
+            compact();
+        } else {
+            open_log(true);
+        }
+    }
+
+    // replay a file's lines, false if any was bad
+    private boolean read(File f) throws IOException {
+        boolean clean = true;
+        boolean is_log = f.equals(log_file);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fs = line.split("\t");
+                Entry e = fs[0].equals("+") ? Entry.parse(fs) : null;
+                if (e != null) {
+                    entries.remove(e.name);
+                    entries.put(e.name, e);
+                } else if (fs[0].equals("-") && fs.length == 2) {
+                    entries.remove(fs[1]);
+                } else {
+                    clean = false;
+                    continue;
+                }
+                if (is_log) {
+                    log_records++;
+                }
+            }
+        }
+        return clean;
+    }
+
+    // the charts already in the directory, oldest first
+    private void import_dir() {
+        File[] fs = dir.listFiles((File f, String name) -> is_chart(name));
+        if (fs == null) {
+            return;
+        }
+        List<Entry> found = new ArrayList<>();
+        for (File f : fs) {
+            found.add(file_entry(f));
+        }
+        found.sort(Comparator.comparingLong(e -> e.start_ms));
+        for (Entry e : found) {
+            entries.put(e.name, e);
+        }
+    }
+
+    static boolean is_chart(String name) {
+        return name.matches("^(?i).*\\.(jpe?g|png)$") && name.indexOf('\t') < 0;
+    }
+
+    // what can be known of a chart without opening it: the start from
+    // a name made by JWX.create_date_time_filename, else the time the
+    // file was written
+    static Entry file_entry(File f) {
+        long end = f.lastModified();
+        long start = end;
+        String s = f.getName().replaceFirst("^chart_", "").replaceFirst("\\.(?i)(jpe?g|png)$", "");
+        try {
+            start = new SimpleDateFormat("MM.dd.yyyy'_'HH.mm.ss.S").parse(s).getTime();
+        } catch (ParseException e) {
+            // not one of ours
+        }
+        return new Entry(f.getName(), start, end, -1, Double.NaN, Double.NaN, f.length());
+    }
+
+    // whether f belongs to this index
+    boolean covers(File f) {
+        java.nio.file.Path p = f.toPath().toAbsolutePath().normalize().getParent();
+        return p != null && p.equals(dir.toPath().toAbsolutePath().normalize()) && is_chart(f.getName());
+    }
+
+    public synchronized void add(Entry e) {
+        entries.remove(e.name);
+        entries.put(e.name, e);
+        append(e.to_line());
+    }
+
+    // a chart written by something other than the receiver, a save
+    // after an edit or a recovery: keep what is known, update the rest
+    public synchronized void saved(File f, int lines) {
+        if (!covers(f)) {
+            return;
+        }
+        Entry old = entries.get(f.getName());
+        Entry e = file_entry(f);
+        if (old != null) {
+            e = new Entry(old.name, old.start_ms, old.end_ms, lines, old.calibration, old.quality, f.length());
+        } else if (lines >= 0) {
+            e = new Entry(e.name, e.start_ms, e.end_ms, lines, e.calibration, e.quality, e.size);
+        }
+        add(e);
+    }
+
+    public synchronized void remove(String name) {
+        if (entries.remove(name) != null) {
+            append("-\t" + name);
+        }
+    }
+
+    public synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    // the charts that ended before ms, the ones to prune
+    public synchronized List<Entry> ended_before(long ms) {
+        return search(Long.MIN_VALUE, ms, Double.NEGATIVE_INFINITY, true);
+    }
+
+    // charts that started from from_ms to to_ms, of at least the given
+    // quality (charts of unknown quality only pass with min_quality
+    // -infinity), sorted by start time; by_end compares the end instead
+    public synchronized List<Entry> search(long from_ms, long to_ms, double min_quality, boolean by_end) {
+        List<Entry> list = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            long t = by_end ? e.end_ms : e.start_ms;
+            if (t >= from_ms && t < to_ms
+                    && (min_quality == Double.NEGATIVE_INFINITY || e.quality >= min_quality)) {
+                list.add(e);
+            }
+        }
+        list.sort(Comparator.comparingLong(e -> e.start_ms));
+        return list;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void append(String line) {
+        try {
+            if (log == null) {
+                open_log(true);
+            }
+            log.write(line);
+            log.write('\n');
+            log.flush();
+            log_stream.getFD().sync();
+            if (++log_records >= compact_records) {
+                compact();
+            }
+        } catch (IOException e) {
+            CommonCode.p("chart index: " + e);
+        }
+    }
+
+    private void open_log(boolean append) throws IOException {
+        close();
+        log_stream = new FileOutputStream(log_file, append);
+        log = new BufferedWriter(new OutputStreamWriter(log_stream, StandardCharsets.UTF_8));
+        if (!append) {
+            log_records = 0;
+        }
+    }
+
+    // fold the log into a new snapshot
+    public synchronized void compact() throws IOException {
+        File tmp = new File(dir, snapshot_name + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+            w.write(header);
+            w.write('\n');
+            for (Entry e : entries.values()) {
+                w.write(e.to_line());
+                w.write('\n');
+            }
+            w.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), snapshot.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // replaying the old log over the new snapshot changes nothing,
+        // so a crash before it is emptied loses nothing
+        open_log(false);
+    }
+
+    public synchronized void close() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                CommonCode.p("chart index: " + e);
+            }
+            log = null;
+            log_stream = null;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File d = null;
+        double hours = 0;
+        double min_quality = Double.NEGATIVE_INFINITY;
+        boolean compact = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-hours":
+                        hours = Double.parseDouble(args[++i]);
+                        break;
+                    case "-quality":
+                        min_quality = Double.parseDouble(args[++i]);
+                        break;
+                    case "-compact":
+                        compact = true;
+                        break;
+                    default:
+                        d = new File(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            CommonCode.p("bad argument: " + e);
+            d = null;
+        }
+        if (d == null || !d.isDirectory()) {
+            CommonCode.p("usage: ChartIndex dir [-hours n] [-quality q] [-compact]");
+            System.exit(1);
+        }
+        ChartIndex index = new ChartIndex(d);
+        long from = (hours > 0) ? System.currentTimeMillis() - (long) (hours * 3600e3) : Long.MIN_VALUE;
+        List<Entry> list = index.search(from, Long.MAX_VALUE, min_quality, false);
+        list.forEach(CommonCode::p);
+        CommonCode.p(list.size() + " of " + index.size() + " chart(s)");
+        if (compact) {
+            index.compact();
+        }
+        index.close();
+    }
+}
@@ -0,0 +1,214 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author mgrouch
+ */
+// an append-only journal of the rows of a chart being received,
+// written through a memory map and forced to disk every few rows,
+// so a chart survives the program or the power going away halfway;
+// JWX rebuilds the charts of journals left unfinished when it starts
+//
+// the file is the chart's path plus ".journal": a 32 byte header
+// (magic, version, width, finished flag, calibration, start time in
+// ms since the epoch), then a record per row: the row number, the
+// row and a CRC32 of both; recovery keeps the rows up to the first
+// record that does not check
+//
+// a finished journal is deleted, the flag covers systems that
+// cannot delete a file while it is still mapped
+final class ChartJournal {
+
+    static final String suffix = ".journal";
+    static final int magic = 0x4a57584a; // JWXJ
+    static final int version = 1;
+    static final int header_size = 32;
+    static final int finished_pos = 12;
+    // records mapped at a time
+    static final int map_rows = 256;
+    // rows between forcing the records to disk, 2 seconds at 120 LPM
+    final int force_rows = 4;
+    final File file;
+    final int width;
+    final int record_size;
+    final RandomAccessFile raf;
+    final FileChannel channel;
+    final CRC32 crc = new CRC32();
+    final byte[] row_num = new byte[4];
+    MappedByteBuffer map;
+    int rows = 0;
+
+    ChartJournal(File chart, int w, double cal_val) throws IOException {
+        file = journal_file(chart);
+        width = w;
+        record_size = w + 8;
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+        ByteBuffer h = ByteBuffer.allocate(header_size);
+        h.putInt(magic).putInt(version).putInt(width).putInt(0);
+        h.putDouble(cal_val).putLong(System.currentTimeMillis());
+        h.flip();
+        channel.write(h, 0);
+        channel.force(true);
+    }
+
+    static File journal_file(File chart) {
+        return new File(chart.getPath() + suffix);
+    }
+
+    void add_row(byte[] src, int off) throws IOException {
+        if (map == null || !map.hasRemaining()) {
+            if (map != null) {
+                map.force();
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE,
+                    header_size + (long) rows * record_size, (long) map_rows * record_size);
+        }
+        row_num[0] = (byte) (rows >>> 24);
+        row_num[1] = (byte) (rows >>> 16);
+        row_num[2] = (byte) (rows >>> 8);
+        row_num[3] = (byte) rows;
+        crc.reset();
+        crc.update(row_num, 0, 4);
+        crc.update(src, off, width);
+        map.put(row_num);
+        map.put(src, off, width);
+        map.putInt((int) crc.getValue());
+        if (++rows % force_rows == 0) {
+            map.force();
+        }
+    }
+
+    // the chart is safely on disk, the journal is no longer needed
+    void finish() {
+        try {
+            ByteBuffer b = ByteBuffer.allocate(4).putInt(0, 1);
+            channel.write(b, finished_pos);
+            channel.force(false);
+        } catch (IOException e) {
+            CommonCode.p("journal finish: " + e);
+        }
+        close();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    // stop writing, the journal stays to be recovered
+    void close() {
+        map = null;
+        try {
+            raf.close();
+        } catch (IOException e) {
+            CommonCode.p("journal close: " + e);
+        }
+    }
+
+    // rebuild the charts of the unfinished journals in a directory,
+    // returns the chart files written
+    static List<File> recover_all(File dir) {
+        List<File> charts = new ArrayList<>();
+        File[] list = dir.listFiles((File d, String name) -> name.endsWith(suffix));
+        if (list != null) {
+            for (File j : list) {
+                File f = recover(j);
+                if (f != null) {
+                    charts.add(f);
+                }
+            }
+        }
+        return charts;
+    }
+
+    // write the chart of one journal and delete the journal, returns
+    // the chart file, or null for a finished or unreadable journal
+    static File recover(File journal) {
+        String path = journal.getPath();
+        File chart = new File(path.substring(0, path.length() - suffix.length()));
+        ChartImage image = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                throw new IOException("not a chart journal");
+            }
+            int w = in.readInt();
+            boolean finished = in.readInt() != 0;
+            double cal_val = in.readDouble();
+            long start_ms = in.readLong();
+            if (!finished && w > 0) {
+                image = new ChartImage(chart.getPath(), w, cal_val);
+                byte[] row = new byte[w];
+                byte[] num = new byte[4];
+                CRC32 c = new CRC32();
+                try {
+                    for (int y = 0;; y++) {
+                        in.readFully(num);
+                        in.readFully(row);
+                        int sum = in.readInt();
+                        c.reset();
+                        c.update(num, 0, 4);
+                        c.update(row, 0, w);
+                        int n = ((num[0] & 0xff) << 24) | ((num[1] & 0xff) << 16) | ((num[2] & 0xff) << 8) | (num[3] & 0xff);
+                        if (n != y || sum != (int) c.getValue()) {
+                            break;
+                        }
+                        image.raster.reserve(y);
+                        image.raster.set_row(y, row, 0);
+                        image.raster.commit_row();
+                    }
+                } catch (EOFException e) {
+                    // the last record was cut short
+                }
+                CommonCode.p(String.format("recovered %d rows of a chart started %tc: %s",
+                        image.raster.height, start_ms, chart));
+            }
+        } catch (IOException e) {
+            CommonCode.p("journal " + journal + ": " + e);
+            return null;
+        }
+        if (image != null && image.raster.height > 0) {
+            image.update_image(false);
+            image.save_file();
+            if (image.changed) {
+                // not written, keep the journal for another try
+                return null;
+            }
+        } else {
+            image = null;
+        }
+        journal.delete();
+        return (image != null) ? chart : null;
+    }
+}
@@ -26,21 +26,24 @@ import java.awt.*;
  *
  * @author lutusp
  */
-final public class ChartPanel extends javax.swing.JPanel {
+final public class ChartPanel extends javax.swing.JPanel implements ChartSink {
 
     final JWX parent;
     final ImagePanel image_panel;
     boolean old_scaled;
     int old_cal_phase = -1;
+    final int image_width;
     final double calibration_val;
     static final long serialVersionUID = 18345;
 
     /** Creates new form ChartPanel
      * @param p
      * @param path
+     * @param width
      * @param cal_val */
-    public ChartPanel(JWX p, String path, double cal_val) {
+    public ChartPanel(JWX p, String path, int width, double cal_val) {
         parent = p;
+        image_width = width;
         calibration_val = cal_val;
         initComponents();
         image_panel = new ImagePanel(this, path);
@@ -52,6 +55,41 @@ final public class ChartPanel extends javax.swing.JPanel {
         image_panel.save_file();
     }
 
+    @Override
+    public void begin_line() {
+        image_panel.chart.begin_line();
+    }
+
+    @Override
+    public void put_pixel(int x, byte v) {
+        image_panel.chart.put_pixel(x, v);
+    }
+
+    @Override
+    public void end_line() {
+        image_panel.chart.end_line();
+    }
+
+    @Override
+    public void refresh() {
+        image_panel.update_image(false);
+    }
+
+    @Override
+    public void finish(double quality) {
+        // runs on the decoder thread, only the chart itself is touched
+        // here; the last rows are taken in before the snapshot and the
+        // panel is repainted on the event thread
+        image_panel.chart.update_image(false);
+        image_panel.chart.finish(quality);
+        SwingUtilities.invokeLater(() -> {
+            image_panel.receiving_fax = false;
+            image_panel.set_image_scale();
+            image_panel.repaint();
+            image_panel.scroll_test(true);
+        });
+    }
+
     public Dimension get_view_size() {
         return chart_scroll_pane.getViewport().getExtentSize();
     }
@@ -83,7 +121,7 @@ final public class ChartPanel extends javax.swing.JPanel {
                 case 0:
                     data_label.setOpaque(false);
                     data_label.setText("");
-                    data_label.setToolTipText(image_panel.file.toString());
+                    data_label.setToolTipText(image_panel.chart.file.toString());
                     image_panel.setToolTipText("");
                     break;
                 case 1:
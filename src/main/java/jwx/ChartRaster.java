@@ -0,0 +1,145 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a growable 8 bit raster of fixed width, stored as tiles of
+// tile_rows rows each so growing never copies existing rows;
+// each tile is also the backing store of a gray BufferedImage,
+// so the display draws straight from the rows the decoder writes
+//
+// tiles are only ever added, the lists are safe to read from
+// the display thread while the decoder grows them
+//
+// charts loaded from a file use MappedRaster, which keeps the rows
+// in a mapped file and only a few tiles on the heap
+class ChartRaster {
+
+    // the color model of TYPE_BYTE_GRAY
+    static final ColorModel gray = new ComponentColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_GRAY), new int[]{8},
+            false, true, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+    final int width;
+    final int tile_rows;
+    final List<byte[]> tiles = new CopyOnWriteArrayList<>();
+    final List<BufferedImage> images = new CopyOnWriteArrayList<>();
+    volatile int height = 0;
+
+    public ChartRaster(int w, int tr) {
+        width = w;
+        tile_rows = tr;
+    }
+
+    // the tile holding row y
+    public byte[] tile(int y) {
+        return tiles.get(y / tile_rows);
+    }
+
+    // offset of row y within its tile
+    public int offset(int y) {
+        return (y % tile_rows) * width;
+    }
+
+    // the image sharing tile i's data
+    public BufferedImage tile_image(int i) {
+        return images.get(i);
+    }
+
+    // make room for row y, adding a tile if needed
+    public void reserve(int y) {
+        while (y >= tiles.size() * tile_rows) {
+            byte[] t = new byte[tile_rows * width];
+            // the image must be added before its tile is visible
+            images.add(image(t, width, tile_rows));
+            tiles.add(t);
+        }
+    }
+
+    // a gray image of w by h pixels drawing from t
+    static BufferedImage image(byte[] t, int w, int h) {
+        WritableRaster wr = Raster.createInterleavedRaster(
+                new DataBufferByte(t, t.length), w, h, w, 1, new int[]{0}, null);
+        return new BufferedImage(gray, wr, false, null);
+    }
+
+    // an empty raster of width w, stored the same way as this one
+    public ChartRaster like(int w) {
+        return new ChartRaster(w, tile_rows);
+    }
+
+    // the rows are about to be changed in place
+    public void edited() {
+    }
+
+    // the raster is no longer used
+    public void release() {
+    }
+
+    // rows 0 .. h as a single image, a copy
+    public BufferedImage to_image(int h) {
+        BufferedImage bi = new BufferedImage(width, h, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < h; y++) {
+            get_row(y, data, y * width);
+        }
+        return bi;
+    }
+
+    // append a row, its contents are whatever was written there
+    // after reserve(), returns the row index
+    public int commit_row() {
+        reserve(height);
+        return height++;
+    }
+
+    public void get_row(int y, byte[] dst, int off) {
+        System.arraycopy(tile(y), offset(y), dst, off, width);
+    }
+
+    public void set_row(int y, byte[] src, int off) {
+        System.arraycopy(src, off, tile(y), offset(y), width);
+    }
+
+    // store src rotated left by shift, i.e. row[i] = src[(i + shift) % width],
+    // without an intermediate copy
+    public void set_row_shifted(int y, byte[] src, int shift) {
+        byte[] t = tile(y);
+        int o = offset(y);
+        int lp = width - shift;
+        System.arraycopy(src, shift, t, o, lp);
+        System.arraycopy(src, 0, t, o + lp, shift);
+    }
+
+    // rotate row y left by shift in place, using tmp as scratch space
+    public void shift_row(int y, int shift, byte[] tmp) {
+        if (shift != 0) {
+            get_row(y, tmp, 0);
+            set_row_shifted(y, tmp, shift);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// destination for decoded scan lines, called from the decoder thread
+public interface ChartSink {
+
+    // a scan line is written pixel by pixel between begin_line()
+    // and end_line(), a line never ended is discarded
+    void begin_line();
+
+    void put_pixel(int x, byte v);
+
+    void end_line();
+
+    // periodic update while a chart is being received
+    void refresh();
+
+    // chart complete or receive aborted, quality is the decoder's
+    // measure of the image, see SyncTracker.quality(), NaN if none
+    void finish(double quality);
+}
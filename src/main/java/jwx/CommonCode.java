@@ -72,20 +72,6 @@ final public class CommonCode {
         return a;
     }
 
-    public static double[] clock_correct_line(double[] a, int line, double delta) {
-        int len = a.length;
-        int p = (int) (delta * line);
-        p = (len * 32 + p) % len;
-        if (p != 0) {
-            int lp = len - p;
-            double[] x = new double[len];
-            System.arraycopy(a, p, x, 0, lp);
-            System.arraycopy(a, 0, x, lp, p);
-            return x;
-        }
-        return a;
-    }
-
     public static void launch_browser(String url) {
         try {
             java.awt.Desktop.getDesktop().browse(java.net.URI.create(url));
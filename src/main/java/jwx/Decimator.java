@@ -0,0 +1,185 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// anti-alias lowpass and integer decimation in one FIR: only every
+// factor'th output is computed, each from the input history, which
+// is the polyphase decimator's cost without splitting the taps
+//
+// the taps are a Kaiser windowed sinc passing pass_hz, reaching
+// stop_atten_db where an alias would fold back onto pass_hz
+final class Decimator {
+
+    // the fax band, APT tones and the slope detector range fit in this
+    static final double pass_hz = 3000;
+    static final double stop_atten_db = 70;
+    // the lowest internal rate chosen
+    static final double min_rate = 8000;
+    final int factor;
+    // taps in reverse order, so an output is a straight dot product
+    // with the history
+    final double[] taps;
+    // the last taps.length - 1 input samples, then the current block
+    double[] history;
+    final int keep;
+    // input samples to skip before the next output
+    int skip = 0;
+    // the float32 path, see DspKernels, null for double
+    final DspKernels kernels;
+    final float[] ftaps;
+    float[] fhistory;
+
+    public Decimator(double rate, int m) {
+        this(rate, m, null);
+    }
+
+    public Decimator(double rate, int m, DspKernels k) {
+        factor = m;
+        taps = design(rate, rate / m);
+        keep = taps.length - 1;
+        history = new double[keep + 4096];
+        kernels = k;
+        if (k != null) {
+            ftaps = new float[taps.length];
+            for (int i = 0; i < taps.length; i++) {
+                ftaps[i] = (float) taps[i];
+            }
+            fhistory = new float[keep + 4096];
+        } else {
+            ftaps = null;
+        }
+    }
+
+    // the largest factor that leaves an even integer rate of at least
+    // min_rate, so lines stay a whole number of samples, 1 if none
+    static int choose_factor(long rate) {
+        for (int m = (int) (rate / min_rate); m > 1; m--) {
+            if (rate % m == 0 && (rate / m) % 2 == 0) {
+                return m;
+            }
+        }
+        return 1;
+    }
+
+    private static double[] design(double rate, double out_rate) {
+        double stop_hz = out_rate - pass_hz;
+        double cutoff = (pass_hz + stop_hz) / 2 / rate;
+        double transition = (stop_hz - pass_hz) / rate;
+        double beta = 0.1102 * (stop_atten_db - 8.7);
+        int n = (int) Math.ceil((stop_atten_db - 8) / (2.285 * 2 * Math.PI * transition)) + 1;
+        n |= 1;
+        double[] h = new double[n];
+        double mid = (n - 1) / 2.0;
+        double i0b = bessel_i0(beta);
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double x = i - mid;
+            double sinc = (x == 0) ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double r = x / mid;
+            double w = bessel_i0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0b;
+            h[n - 1 - i] = sinc * w;
+            sum += h[n - 1 - i];
+        }
+        // unity gain at DC
+        for (int i = 0; i < n; i++) {
+            h[i] /= sum;
+        }
+        return h;
+    }
+
+    private static double bessel_i0(double x) {
+        double sum = 1, term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-16) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    // the group delay in output samples
+    public double delay() {
+        return keep / 2.0 / factor;
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(history, 0.0);
+        if (fhistory != null) {
+            java.util.Arrays.fill(fhistory, 0.0f);
+        }
+        skip = 0;
+    }
+
+    // filter len samples from src[off] and write every factor'th
+    // output to dst, returns the number written, at most
+    // len / factor + 1
+    public int process(double[] src, int off, int len, double[] dst) {
+        if (kernels != null) {
+            return process_float(src, off, len, dst);
+        }
+        if (history.length < keep + len) {
+            double[] h = new double[keep + len];
+            System.arraycopy(history, 0, h, 0, keep);
+            history = h;
+        }
+        double[] x = history;
+        System.arraycopy(src, off, x, keep, len);
+        final double[] t = taps;
+        final int nt = t.length;
+        int n = 0;
+        int j = skip;
+        for (; j < len; j += factor) {
+            // the output at input j uses x[j .. j + keep]
+            double sum = 0;
+            for (int k = 0; k < nt; k++) {
+                sum += t[k] * x[j + k];
+            }
+            dst[n++] = sum;
+        }
+        skip = j - len;
+        System.arraycopy(x, len, x, 0, keep);
+        return n;
+    }
+
+    // as process(), with float32 taps and history
+    private int process_float(double[] src, int off, int len, double[] dst) {
+        if (fhistory.length < keep + len) {
+            float[] h = new float[keep + len];
+            System.arraycopy(fhistory, 0, h, 0, keep);
+            fhistory = h;
+        }
+        float[] x = fhistory;
+        kernels.to_float(src, off, x, keep, len);
+        final int nt = ftaps.length;
+        int n = 0;
+        int j = skip;
+        for (; j < len; j += factor) {
+            dst[n++] = kernels.dot(ftaps, 0, x, j, nt);
+        }
+        skip = j - len;
+        System.arraycopy(x, len, x, 0, keep);
+        return n;
+    }
+}
@@ -25,11 +25,21 @@ package jwx;
  */
 final public class DecodeFax {
 
-    final JWX parent;
+    final DecodeHost parent;
     final double goertzel_accept;
-    GoertzelFilter gstart = null;
-    GoertzelFilter gend = null;
-    ChartPanel chart_panel;
+    // APT tones: start for IOC 576, start for IOC 288, stop
+    final int tone_start_576 = 0;
+    final int tone_start_288 = 1;
+    final int tone_stop = 2;
+    ToneDetectorBank tones = null;
+    // the start tone that began the current chart
+    int start_tone = tone_start_576;
+    int start_ioc = 576;
+    // only the decoder thread sets it, the periodic refresh reads it
+    volatile ChartSink chart;
+    // set by unlock() on another thread, the decoder ends the chart
+    // at the start of its next block
+    private volatile boolean unlock_requested = false;
 
     // machine state enumeration
     enum State {
@@ -56,24 +66,43 @@ final public class DecodeFax {
     };
     State state;
     double calibration_val;
+    // the internal rate all the processing below runs at, the
+    // capture rate divided by the decimation factor
     long sample_rate;
+    long capture_rate;
+    // anti-alias front end, null when the capture rate is used as is
+    Decimator decimator;
+    double[] dec_block;
+    // float32 kernels for the FIR steps and pixels, null for double
+    DspKernels kernels;
     int sync_time;
     double sync_interval;
     int sync_lines;
-    int lines_per_second;
+    // line rate and index of cooperation of the current chart, the
+    // IOC follows the start tone unless the host sets one
+    int lines_per_minute;
+    int ioc;
     double sample_increm;
+    // a line is row_num / row_den samples, row_len of them whole,
+    // the line start moves row_den on each sample in a space of
+    // row_num, so no fraction of a line is ever lost
+    long row_num, row_den;
+    double line_samples;
     int row_len;
-    long long_row_len;
-    double sig_sum, sig_count;
+    int image_width;
+    long line_phase;
+    // the line_time_delta line_phase was computed for
+    long phase_delta;
+    // the longest chart received, seconds
+    final int max_chart_sec = 2000;
     double sampleinterval;
     double gain_thresh;
     double gain_level;
-    double gain_tc;
     double cf;
-    final double invsqr2 = 1.0 / Math.sqrt(2);
     double rcvr_mark, rcvr_space;
     double rcvr_dev, ms_q, bp_q;
     double startf;
+    double start288f;
     double stopf;
     double wsig;
     double sig;
@@ -81,44 +110,51 @@ final public class DecodeFax {
     final double g_gain_adjust = 0.5;
     double time_sec;
     long sample_count;
-    long line_time_zero_count;
-    int sign;
     long line_time_delta;
     boolean linetime_zero;
     int frequency_meter_cycles;
-    int old_sign;
     int image_line;
     int row_index;
-    int line_index;
-    double row_pos;
     int timer_counter = 0;
-    double[] sync_array;
-    double[] sync_line;
-    double val;
-    byte[] line_buf;
+    final SyncTracker sync_tracker = new SyncTracker();
+    boolean sync_started;
+    boolean auto_calibrate = true;
+    // the largest calibration value auto calibration will set,
+    // 1000 ppm is far beyond any working sound card
+    final double max_auto_calibration = 1e-3;
+    // a scan line has been started in the chart
+    boolean line_open;
+    // the tracker has had the current line, and a correction that
+    // shortens a line waits for the next line start
+    boolean line_tracked;
+    int pending_correction;
+    // the samples of the line being received, and its pixels
+    final LineResampler resampler = new LineResampler();
+    double[] line_buf;
+    double[] pixel_buf;
+    byte[] pixel_bytes;
     boolean grayscale = true;
     boolean video_filter = false;
     boolean enabled = false;
-    double pll_integral = 0;
-    double pll_reference = 0;
-    double pll_loop_control;
-    final double pll_loop_gain = 1;
     final double pll_center_f = 1900.0;
     final double pll_deviation_f = 400.0;
     // produce a unit output level at maximum deviation
     // plus 20% to improve appearance of charts
     final double pll_output_gain = 1.2 * pll_center_f / pll_deviation_f;
-    final double pll_omega = 2 * Math.PI * pll_center_f;
     //double pll_loop_lowpass_filter_f = 1900;
     // bandwidth is 1728 Hz per line, 3456 Hz / second
     // times 2 (Nyquist-Shannon) = 6912 Hz
     final double pll_output_lowpass_filter_f = 650;
     final double pll_video_lowpass_filter_f = 400;
-    //BiQuadraticFilter biquad_pll_loop_lowpass;
-    BiQuadraticFilter biquad_pll_output_lowpass;
-    BiQuadraticFilter biquad_video_lowpass;
-
-    public DecodeFax(JWX p) {
+    // the block stages ahead of tone detection, in the order they
+    // run, setup() builds them; a benchmark may swap any of them
+    AgcStage agc;
+    DemodStage demod;
+    OutputFilterStage filters;
+    BlockStage[] stages;
+    final SampleBlock block = new SampleBlock();
+
+    public DecodeFax(DecodeHost p) {
         parent = p;
         goertzel_accept = 0.5;
     }
@@ -127,20 +163,23 @@ final public class DecodeFax {
         // *** sync time seconds, should be 20 for U.S. locales
         sync_time = 20;
         // update local calibration value
-        calibration_val = parent.calibration.get_dvalue();
+        calibration_val = parent.get_calibration();
         state = State.WAITSIG;
-        sample_rate = parent.data_rate.get_value();
+        capture_rate = parent.get_sample_rate();
+        int factor = parent.get_decimate() ? Decimator.choose_factor(capture_rate) : 1;
+        // float32 only pays with vectors, the double path is the
+        // scalar fallback
+        kernels = parent.get_float_dsp() ? DspKernels.load() : null;
+        if (kernels != null && !kernels.vectorized()) {
+            kernels = null;
+        }
+        decimator = (factor > 1) ? new Decimator(capture_rate, factor, kernels) : null;
+        sample_rate = capture_rate / factor;
         sync_interval = 0.025; // 25 ms
-        lines_per_second = 2;
-        sync_lines = sync_time * lines_per_second;
-        // gain value integration time constant
-        gain_tc = 1000.0 / sample_rate;
-        // automatic frequency control time constant
-        sample_increm = sample_rate / (parent.default_image_width * 2.0);
-        long_row_len = sample_rate / lines_per_second;
-        row_len = (int) long_row_len;
+        set_geometry(start_ioc);
         sampleinterval = 1.0 / sample_rate;
-        gain_thresh = 256;
+        // input samples are normalized to +/- 1.0 full scale
+        gain_thresh = 256 * PcmCodec.inv_full_scale;
         // the following are receiver slope detector
         // fine-tuning values meant to linearize its response
         cf = 2050.0;
@@ -150,308 +189,484 @@ final public class DecodeFax {
         rcvr_mark = cf + rcvr_dev;
         rcvr_space = cf - rcvr_dev;
         startf = 300.0;
+        start288f = 675.0;
         stopf = 450.0;
         g_size = sample_rate / 4.0;
-        gstart = new GoertzelFilter(
-                startf * sampleinterval,
+        tones = new ToneDetectorBank(new double[]{
+            startf * sampleinterval,
+            start288f * sampleinterval,
+            stopf * sampleinterval},
                 g_size,
                 goertzel_accept);
-        gend = new GoertzelFilter(
-                stopf * sampleinterval,
-                g_size,
-                goertzel_accept);
-        // biquad_pll_loop_lowpass = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, pll_loop_lowpass_filter_f, sample_rate, invsqr2);
-        biquad_pll_output_lowpass = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, pll_output_lowpass_filter_f, sample_rate, invsqr2);
-        biquad_video_lowpass = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, pll_video_lowpass_filter_f, sample_rate, invsqr2);
+        // the level carries over a restart
+        agc = new AgcStage(sample_rate, gain_level);
+        demod = new DemodStage(Demodulator.create(parent.get_demodulator(), pll_center_f, sample_rate, parent));
+        filters = new OutputFilterStage(sample_rate, pll_output_lowpass_filter_f, pll_video_lowpass_filter_f, pll_output_gain);
+        stages = new BlockStage[]{agc, demod, filters};
         enable_filtering();
+        grayscale = parent.get_grayscale();
+    }
+
+    // the chart width in pixels for an index of cooperation, IOC 576
+    // originates in the old mechanical fax drum diameter, and
+    // 576 * pi = 1809.557
+    static int image_width(int ioc) {
+        return (int) Math.round(ioc * Math.PI);
+    }
+
+    // line timing and width from the host's line rate and IOC, or
+    // the IOC given when the host leaves it to the start tone
+    private void set_geometry(int tone_ioc) {
+        lines_per_minute = Math.max(1, parent.get_lines_per_minute());
+        ioc = (parent.get_ioc() > 0) ? parent.get_ioc() : tone_ioc;
+        image_width = image_width(ioc);
+        long num = sample_rate * 60;
+        long den = lines_per_minute;
+        long g = gcd(num, den);
+        row_num = num / g;
+        row_den = den / g;
+        line_samples = (double) row_num / row_den;
+        row_len = (int) (row_num / row_den);
+        sync_lines = sync_time * lines_per_minute / 60;
+        // automatic frequency control time constant
+        sample_increm = line_samples / image_width;
+        // force line_phase to be recomputed
+        phase_delta = Long.MIN_VALUE;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // where sample n falls in its line, in units of 1 / row_num line
+    private long line_phase(long n) {
+        return Math.floorMod((n - line_time_delta) * row_den, row_num);
     }
 
     public void init_chart_read(boolean enable) {
         parent.cancel_calibrate();
         if (enable && !enabled) {
             setup();
-            old_sign = 0;
             sig = 0;
             sample_count = 0;
-            line_time_zero_count = 0;
             image_line = 0;
             //cycle_count = 0;
             //old_count = 0;
             line_time_delta = 0;
+            line_phase = 0;
+            phase_delta = 0;
             frequency_meter_cycles = 0;
             state = State.WAITSIG;
+            unlock_requested = false;
             linetime_zero = false;
-            gstart.reset(true);
-            gend.reset(true);
-            parent.audio_processor.enable_audio_read(true);
+            tones.reset();
+            parent.enable_input(true);
         } else if (!enable && enabled) {
-            unlock();
-            parent.audio_processor.enable_audio_read(false);
+            // stops the decoder thread, the chart can then be ended here
+            parent.enable_input(false);
+            end_chart();
         }
         System.gc();
         enabled = enable;
     }
 
+    // for the debug monitor
+    public double demod_integral() {
+        return (demod == null) ? 0 : demod.demodulator.integral();
+    }
+
     public boolean enabled() {
         return enabled;
     }
 
+    // average input level in 16 bit sample units
+    public double input_level() {
+        return gain_level * PcmCodec.full_scale;
+    }
+
     // process_data() and all its state functions are threaded by
-    // the AudioInputReader class, the source of its audio signals
-    protected void process_data(short[] array) {
-        for (short v : array) {
-            double dv = v;
-            // to avoid problems with extended runs,
-            // all variables that interact with the
-            // sample count must be long
-            time_sec = sample_count * sampleinterval;
-            linetime_zero = (((sample_count - line_time_delta) % long_row_len) == 0L);
-            line_time_zero_count++;
-
-            // PLL block
-
-            gain_level += (Math.abs(dv) - gain_level) * gain_tc;
-            gain_level = Math.max(.1, gain_level);
-            dv /= gain_level;
-
-            pll_loop_control = dv * pll_reference * pll_loop_gain;
-            //pll_loop_control = biquad_pll_loop_lowpass.filter(pll_loop_control);
-            pll_integral += pll_loop_control * sampleinterval;
-            if (Double.isInfinite(pll_integral)) {
-                pll_integral = 0;
-            }
-            pll_reference = Math.sin(pll_omega * (time_sec + pll_integral));
-            wsig = biquad_pll_output_lowpass.filter(pll_loop_control) * pll_output_gain;
-
-            wsig = Math.min(wsig, 2.0);
-            wsig = Math.max(wsig, -2.0);
-            sign = (pll_reference > 0) ? 1 : -1;
-            if (sign > old_sign) {
-                frequency_meter_cycles++;
-            }
-            old_sign = sign;
-            gstart.process(wsig);
-            gend.process(wsig);
-            // low-pass for video
-            sig = (video_filter) ? biquad_video_lowpass.filter(wsig) : wsig;
-            //now execute machine states
-            while (machine_states[state.ordinal()].exec()) {
+    // the DecodeThread class, which drains the capture ring
+    //
+    // capture rates above about 16 kHz are first decimated to an
+    // internal rate of 8 to 16 kHz, the signal is all under 3 kHz
+    //
+    // the stages depend on nothing downstream of them, so a block
+    // is processed in passes: AGC, the demodulator and the output
+    // filters each over the whole block (see BlockStage), then tone
+    // detection and the machine states, which take the samples in
+    // runs that end at line starts
+    //
+    // samples are normalized, +/- 1.0 is 16 bit full scale
+    protected void process_data(double[] array, int len) {
+        process_data(array, 0, len);
+    }
+
+    protected void process_data(double[] array, int off, int len) {
+        if (decimator == null) {
+            process_block(array, off, len);
+            return;
+        }
+        // bring the capture rate down to the internal rate first
+        int max = len / decimator.factor + 1;
+        if (dec_block == null || dec_block.length < max) {
+            dec_block = new double[max];
+        }
+        int n = decimator.process(array, off, len, dec_block);
+        if (n > 0) {
+            process_block(dec_block, 0, n);
+        }
+    }
+
+    private void process_block(double[] array, int off, int len) {
+        if (unlock_requested) {
+            end_chart();
+        }
+        block.set(array, off, len);
+        for (BlockStage stage : stages) {
+            stage.process(block);
+        }
+        frequency_meter_cycles += block.cycles;
+        // tone values only change at the end of a detector window,
+        // so run the bank up to each window end and let the states
+        // see the new values from the sample that completed it
+        for (int i = 0; i < len;) {
+            int n = Math.min(len - i, tones.remaining());
+            run_states(i, i + n - 1);
+            tones.process(block.wsig, i, n);
+            run_states(i + n - 1, i + n);
+            i += n;
+        }
+        time_sec = sample_count * sampleinterval;
+    }
+
+    // the states take the samples in runs up to the next line start,
+    // so a state sees linetime_zero only on the first sample it gets
+    //
+    // a state that moves the line timing (line_time_delta or the
+    // geometry) returns right after that sample, or hands the sample
+    // on and the old timing holds for that sample only, as when the
+    // states ran a sample at a time
+    private void run_states(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        for (int i = from; i < to;) {
+            linetime_zero = (line_phase < row_den);
+            int end = (int) Math.min(to, i + line_run());
+            int j;
+            while ((j = machine_states[state.ordinal()].exec(i, end)) == i) {
+                if (line_time_delta != phase_delta) {
+                    end = i + 1;
+                }
             }
-            if (linetime_zero) {
-                image_line++;
-                line_time_zero_count = 0;
+            advance(j - i);
+            i = j;
+        }
+        gain_level = block.gain[to - 1];
+        wsig = block.wsig[to - 1];
+        sig = block.sig[to - 1];
+    }
+
+    // samples from the current one to the next line start
+    private long line_run() {
+        return (row_num - line_phase + row_den - 1) / row_den;
+    }
+
+    // count n samples of a run as done
+    private void advance(int n) {
+        if (linetime_zero) {
+            image_line++;
+        }
+        // to avoid problems with extended runs,
+        // all variables that interact with the
+        // sample count must be long
+        sample_count += n;
+        // the states move the line start now and then, the line
+        // phase only needs a division when they have
+        if (line_time_delta != phase_delta) {
+            phase_delta = line_time_delta;
+            line_phase = line_phase(sample_count);
+        } else {
+            // a run never crosses more than one line start
+            line_phase += n * row_den;
+            if (line_phase >= row_num) {
+                line_phase -= row_num;
             }
-            sample_count++;
         }
     }
 
+    // whether sample n of the current run ends a line
+    private boolean line_ends(int n) {
+        return line_phase + n * row_den >= row_num - row_den;
+    }
+
     final class s_waitsig implements MachineState {
 
         @Override
-        public boolean exec() {
+        public int exec(int from, int to) {
             image_line = 0;
-            line_time_delta = 0;
-            if (gain_level > gain_thresh) {
-                state = State.WAITSTB;
-                return true;
+            if (line_time_delta != 0) {
+                line_time_delta = 0;
+                to = from + 1;
             }
-            return false;
+            final double[] gain = block.gain;
+            for (int i = from; i < to; i++) {
+                if (gain[i] > gain_thresh) {
+                    state = State.WAITSTB;
+                    return i;
+                }
+            }
+            return to;
         }
     }
 
     final class s_waitstb implements MachineState {
 
         @Override
-        public boolean exec() {
-            if (gain_level < gain_thresh) {
-                state = State.WAITSIG;
-                return true;
-            } else {
-                if (gstart.active()) {
-                    state = State.WAITSTE;
-                    return true;
+        public int exec(int from, int to) {
+            final double[] gain = block.gain;
+            for (int i = from; i < to; i++) {
+                if (gain[i] < gain_thresh) {
+                    state = State.WAITSIG;
+                    return i;
                 }
             }
-            return false;
+            // tones stay the same for the whole run
+            if (tones.active(tone_start_576) || tones.active(tone_start_288)) {
+                // the stronger start tone sets the IOC
+                start_tone = (tones.value(tone_start_288) > tones.value(tone_start_576))
+                        ? tone_start_288 : tone_start_576;
+                start_ioc = (start_tone == tone_start_288) ? 288 : 576;
+                set_geometry(start_ioc);
+                state = State.WAITSTE;
+                return from;
+            }
+            return to;
         }
     }
 
     final class s_waitste implements MachineState {
 
         @Override
-        public boolean exec() {
-            if (!gstart.active()) {
+        public int exec(int from, int to) {
+            if (!tones.active(start_tone)) {
                 state = State.WAITLS1;
-                return true;
+                return from;
             }
-            return false;
+            return to;
         }
     }
 
     final class s_waitls1 implements MachineState {
 
         @Override
-        public boolean exec() {
+        public int exec(int from, int to) {
             // wait for line start
             if (linetime_zero) {
-                sync_array = null;
+                sync_started = false;
                 state = State.SYNC;
-                return true;
+                return from;
             }
-            return false;
+            return to;
         }
     }
 
     final class s_sync implements MachineState {
 
         @Override
-        public boolean exec() {
-            if (sync_array == null) {
+        public int exec(int from, int to) {
+            if (!sync_started) {
                 // update local calibration value
-                calibration_val = parent.calibration.get_dvalue();
+                calibration_val = parent.get_calibration();
                 image_line = 0;
                 row_index = 0;
-                sync_array = new double[row_len];
-                sync_line = new double[row_len];
+                auto_calibrate = parent.get_auto_calibrate();
+                sync_tracker.start_sync(row_len, line_samples * calibration_val, image_width, sync_lines);
+                sync_started = true;
             }
             // must acculumate to work with
-            // noisy signals and clock errors
-            sync_line[row_index] += wsig;
-            row_index++;
-            if (row_index >= row_len) {
+            // noisy signals and clock errors, the tracker
+            // corrects for the clock error as it adds
+            int n = to - from;
+            sync_tracker.add_sync(row_index, block.wsig, from, n);
+            row_index += n;
+            // lines differ by a sample when they aren't a whole
+            // number of samples long
+            if (line_ends(n - 1)) {
                 row_index = 0;
-                // shift result array to correct for clock error
-                sync_line = CommonCode.clock_correct_line(
-                        sync_line,
-                        image_line,
-                        row_len * calibration_val);
-                // now accumulate result
-                for (int i = 0; i < row_len; i++) {
-                    sync_array[i] += sync_line[i];
-                    sync_line[i] = 0.0;
-                }
+                sync_tracker.end_sync_line();
                 if (image_line >= sync_lines) {
-                    // integrate and locate negative excursion
-                    double iv = sync_array[sync_array.length - 1];
-                    double ns, os = (iv > 0) ? 1 : -1;
-                    // integration time constant
-                    double tc = 200.0 / sample_rate;
-                    for (int i = 0; i < row_len; i++) {
-                        iv += (sync_array[i] - iv) * tc;
-                        ns = (iv > 0) ? 1 : -1;
-                        sync_line[i] = ns - os;
-                        os = ns;
-                    }
-                    StringBuilder sb = new StringBuilder();
-                    /*for (Double v : sync_line) {
-                    sb.append(v);
-                    sb.append(",");
-                    }
-                    sb.append(sync_line[sync_line.length - 1]);
-                    parent.write_file("/netbackup/data/python_projects/plot_text_file_content/temp.txt", sb.toString());
-                     */
-                    double v = sync_line[0];
-                    line_time_delta = 0;
-                    for (int i = 1; i < row_len; i++) {
-                        if (sync_line[i] < v) {
-                            v = sync_line[i];
-                            line_time_delta = i;
-                        }
-                    }
+                    // integrate and locate negative excursion,
+                    // integration time constant 200 / sample_rate
+                    line_time_delta = sync_tracker.locate_sync(200.0 / sample_rate);
                     // adjust for elapsed time of sync calculation
-                    line_time_delta += (sync_lines * row_len * calibration_val)
+                    line_time_delta += (sync_lines * line_samples * calibration_val)
                             // now align sync bar by subtracting a factor
                             // for the integration time constant
                             - (int) (sync_interval * 0.12 * sample_rate);
+                    if (auto_calibrate) {
+                        double slope = sync_tracker.phasing_slope();
+                        if (slope != 0 && !Double.isNaN(slope)) {
+                            // the pulse found is the average over the
+                            // phasing lines, carry it on to the last one
+                            line_time_delta += Math.round(slope * (sync_lines - 1) / 2.0);
+                            update_calibration(calibration_val + slope / line_samples);
+                        }
+                    }
+                    // waiting for a line start has nothing to do on
+                    // the last sample of a line
                     state = State.WAITLS2;
-                    return true;
                 }
             }
-            return false;
+            return to;
         }
     }
 
     final class s_waitls2 implements MachineState {
 
         @Override
-        public boolean exec() {
+        public int exec(int from, int to) {
             if (linetime_zero) {
                 // update for lock-entry contingency
-                calibration_val = parent.calibration.get_dvalue();
-                chart_panel = parent.new_chart(calibration_val);
+                calibration_val = parent.get_calibration();
+                chart = parent.new_chart(image_width, calibration_val);
+                auto_calibrate = parent.get_auto_calibrate();
+                sync_tracker.start_track(row_len, line_samples * calibration_val, image_width,
+                        parent.get_sync_tracking());
                 row_index = 0;
-                row_pos = 0;
-                line_index = 0;
-                line_buf = null;
-                sig_sum = 0;
-                sig_count = 0;
+                line_open = false;
+                line_tracked = false;
+                pending_correction = 0;
+                resampler.set(image_width, sample_increm, kernels);
+                // room for a line lengthened by the tracker or the
+                // line timing fraction, pixels never reach past it
+                int room = row_len + sync_tracker.max_step + 4;
+                if (line_buf == null || line_buf.length < room) {
+                    line_buf = new double[room];
+                }
+                if (pixel_buf == null || pixel_buf.length < image_width) {
+                    pixel_buf = new double[image_width];
+                    pixel_bytes = new byte[image_width];
+                }
                 state = State.PROC;
-                return true;
+                return from;
             }
-            return false;
+            return to;
         }
     }
 
     final class s_proc implements MachineState {
 
         @Override
-        public boolean exec() {
+        public int exec(int from, int to) {
             if (linetime_zero) {
-                row_index = 0;
-                row_pos = 0;
-                line_index = 0;
-                if (line_buf != null) {
-                    chart_panel.image_panel.add_line(line_buf);
+                if (line_open) {
+                    put_line(row_index);
+                    chart.end_line();
+                    // cuts the line just started short
+                    line_time_delta += pending_correction;
+                    pending_correction = 0;
                 }
-                line_buf = new byte[parent.default_image_width];
+                line_tracked = false;
+                row_index = 0;
+                chart.begin_line();
+                line_open = true;
                 // criteria for end of processing
-                if (gend.active() || image_line > 4000) {
+                if (tones.active(tone_stop) || image_line > max_chart_sec * lines_per_minute / 60) {
                     state = State.END;
-                    return true;
+                    return from;
                 }
-            }
-            if (row_index > row_pos) {
-                row_pos += sample_increm;
-                if (sig_count > 0) {
-                    sig_sum /= sig_count;
+                if (line_time_delta != phase_delta) {
+                    to = from + 1;
                 }
-                val = (sig_sum + 1.0) * 0.5;
-                sig_sum = 0;
-                sig_count = 0;
-                val = Math.min(val, 1.0);
-                val = Math.max(val, 0.0);
-                byte b;
-                if (grayscale) {
-                    b = (byte) (val * 255.0);
+            }
+            int n = to - from;
+            if (!line_tracked) {
+                sync_tracker.add_track(row_index, block.sig, from, n);
+            }
+            int m = Math.min(n, line_buf.length - row_index);
+            if (m > 0) {
+                System.arraycopy(block.sig, from, line_buf, row_index, m);
+            }
+            row_index += n;
+            if (!line_tracked && line_ends(n - 1)) {
+                // keep the line start on the image as it drifts; a
+                // later start lengthens this line, done at its last
+                // sample so no line is opened twice, an earlier one
+                // shortens the next line once it has started
+                line_tracked = true;
+                int c = sync_tracker.end_track_line();
+                if (c > 0) {
+                    line_time_delta += c;
                 } else {
-                    b = (byte) ((val > 0.5) ? 255 : 0);
+                    pending_correction = c;
                 }
-                line_buf[line_index++] = b;
+            }
+            return to;
+        }
+    }
+
+    // resample the len samples of the line just received to the
+    // chart width, the line is complete so this works on all of it
+    private void put_line(int len) {
+        len = Math.min(len, line_buf.length);
+        if (kernels != null) {
+            resampler.resample(line_buf, len, pixel_bytes, grayscale);
+            for (int x = 0; x < image_width; x++) {
+                chart.put_pixel(x, pixel_bytes[x]);
+            }
+            return;
+        }
+        resampler.resample(line_buf, len, pixel_buf);
+        for (int x = 0; x < image_width; x++) {
+            double v = (pixel_buf[x] + 1.0) * 0.5;
+            v = Math.min(v, 1.0);
+            v = Math.max(v, 0.0);
+            byte b;
+            if (grayscale) {
+                b = (byte) (v * 255.0);
             } else {
-                sig_sum += sig;
-                sig_count += 1;
+                b = (byte) ((v > 0.5) ? 255 : 0);
             }
-            row_index++;
-            return false;
+            chart.put_pixel(x, b);
         }
     }
 
     final class s_end implements MachineState {
 
         @Override
-        public boolean exec() {
+        public int exec(int from, int to) {
+            if (auto_calibrate && chart != null) {
+                // whatever drift the image still had refines the
+                // calibration for the next chart
+                double slope = sync_tracker.tracking_slope();
+                if (slope != 0 && !Double.isNaN(slope)) {
+                    update_calibration(calibration_val + slope / line_samples);
+                }
+            }
             save_chart();
             state = State.WAITSIG;
-            return false;
+            return from + 1;
         }
     }
 
+    // adopt an automatically measured calibration value, the host
+    // must return it from get_calibration() from now on
+    private void update_calibration(double cal) {
+        cal = Math.max(-max_auto_calibration, Math.min(max_auto_calibration, cal));
+        calibration_val = cal;
+        parent.set_auto_calibration(cal);
+    }
+
     public void save_chart() {
-        if (chart_panel != null) {
-            chart_panel.image_panel.receiving_fax = false;
-            chart_panel.image_panel.update_image(false);
-            chart_panel.image_panel.save_file();
-            chart_panel.image_panel.scroll_test(true);
+        if (chart != null) {
+            chart.finish(sync_tracker.quality());
+            chart = null;
         }
     }
 
@@ -464,15 +679,37 @@ final public class DecodeFax {
     //    return state;
     //}
 
+    // any thread, the chart is ended by the decoder
     public void unlock() {
-        save_chart();
         parent.cancel_calibrate();
+        unlock_requested = true;
+    }
+
+    // decoder thread, after a block failed part way: the chart so far
+    // is kept if it can be, then wait for the next start tone
+    public void resync() {
+        unlock_requested = false;
+        try {
+            save_chart();
+        } catch (RuntimeException e) {
+            CommonCode.p("resync, chart dropped: " + e);
+            chart = null;
+        }
+        tones.reset();
+        linetime_zero = false;
+        state = State.WAITSIG;
+    }
+
+    // decoder thread, or any thread once the decoder has stopped
+    private void end_chart() {
+        unlock_requested = false;
+        save_chart();
         state = State.END;
     }
 
     public void lock() {
         if (!enabled) {
-            CommonCode.tell_user(parent, "Must enable receive to lock", "Cannot Lock");
+            parent.tell_user("Must enable receive to lock", "Cannot Lock");
         } else {
             parent.cancel_calibrate();
             state = State.WAITLS2;
@@ -481,14 +718,18 @@ final public class DecodeFax {
 
     public void periodic_actions() {
         // every 2 seconds for default 500 ms timer
-        if (state == State.PROC && chart_panel != null && (timer_counter++ % 4 == 0)) {
-            chart_panel.image_panel.update_image(false);
+        ChartSink c = chart;
+        if (state == State.PROC && c != null && (timer_counter++ % 4 == 0)) {
+            c.refresh();
         }
         enable_filtering();
-        grayscale = parent.grayscale.get_value();
+        grayscale = parent.get_grayscale();
     }
 
     public void enable_filtering() {
-        video_filter = parent.filter.get_value();
+        video_filter = parent.get_video_filter();
+        if (filters != null) {
+            filters.video_filter = video_filter;
+        }
     }
 }
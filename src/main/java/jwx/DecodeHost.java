@@ -0,0 +1,72 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// everything DecodeFax needs from its owner, so the same
+// decoder can run under the JWX frame or from a recorded file
+public interface DecodeHost {
+
+    long get_sample_rate();
+
+    double get_calibration();
+
+    // scan lines per minute, 60, 90, 120 or 240
+    int get_lines_per_minute();
+
+    // index of cooperation, 576 or 288, 0 to follow the start tone
+    int get_ioc();
+
+    boolean get_grayscale();
+
+    boolean get_video_filter();
+
+    // PLL oscillator accuracy, see NCO
+    int get_nco_table_bits();
+
+    boolean get_nco_interpolate();
+
+    boolean get_sync_tracking();
+
+    // whether to decimate high capture rates to an internal rate
+    boolean get_decimate();
+
+    // float32 vector kernels for the FIR steps, see DspKernels
+    boolean get_float_dsp();
+
+    // "pll" or "quadrature", see Demodulator
+    String get_demodulator();
+
+    boolean get_auto_calibrate();
+
+    // a calibration value measured by the decoder, called from the
+    // decoder thread, get_calibration() must return it immediately
+    void set_auto_calibration(double cal_val);
+
+    ChartSink new_chart(int width, double cal_val);
+
+    void cancel_calibrate();
+
+    void enable_input(boolean enable);
+
+    void tell_user(String message, String title);
+}
@@ -0,0 +1,80 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * @author mgrouch
+ */
+// consumer side of a capture ring, runs the decoder of one channel
+// with its chart creation and saving, and the audio monitor on the
+// main channel, so none of these hold up capture or other channels
+final class DecodeThread extends Thread {
+
+    final DecodeFax decode_fax;
+    // the monitor output, null on channels that aren't monitored
+    final AudioProcessor monitor;
+    final SampleRing ring;
+    // largest block handed to the decoder at once
+    final int max_block;
+    // how long to park when the ring is empty
+    final long idle_wait_ns = 50_000_000L;
+    volatile boolean running = true;
+
+    public DecodeThread(DecodeFax df, SampleRing r, int mb, AudioProcessor m) {
+        decode_fax = df;
+        ring = r;
+        max_block = mb;
+        monitor = m;
+        setName("jwx-decode");
+    }
+
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(this);
+        join();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (ring.await(idle_wait_ns) == 0) {
+                continue;
+            }
+            // process what is there in contiguous runs
+            int n;
+            while (running && (n = Math.min(ring.contiguous(), max_block)) > 0) {
+                int idx = ring.read_index();
+                try {
+                    decode_fax.process_data(ring.buffer, idx, n);
+                } catch (RuntimeException e) {
+                    // a bad block must not stop reception for good
+                    CommonCode.p("decode error, resyncing: " + e);
+                    decode_fax.resync();
+                }
+                if (monitor != null && monitor.write_valid) {
+                    monitor.write_output(ring.buffer, idx, n);
+                }
+                ring.consume(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a frequency demodulator for the fax carrier, black at 1500 Hz
+// and white at 2300 Hz around a 1900 Hz center
+//
+// process() gives the carrier's offset from the center in units
+// of the center frequency, (f - fc) / fc, unfiltered; DecodeFax
+// lowpasses and scales it the same way whichever kind runs
+//
+// "pll" is the original phase locked loop, "quadrature" mixes the
+// carrier down to I/Q baseband and measures the phase step from
+// one sample to the next, it works a block at a time and has no
+// lock-in transient
+interface Demodulator {
+
+    // normalized samples src[off] .. src[off + len - 1] to dst[0]
+    // .. dst[len - 1], src and dst may be the same array; returns
+    // the carrier cycles completed in the block, for the frequency
+    // meter
+    int process(double[] src, int off, int len, double[] dst);
+
+    // integral of the output over time, for the debug monitor
+    double integral();
+
+    String name();
+
+    static Demodulator create(String kind, double center_f, long sample_rate, DecodeHost host) {
+        if ("quadrature".equals(kind)) {
+            return new QuadratureDemodulator(center_f, sample_rate, host.get_nco_table_bits(), host.get_nco_interpolate());
+        }
+        return new PllDemodulator(center_f, sample_rate, host.get_nco_table_bits(), host.get_nco_interpolate());
+    }
+}
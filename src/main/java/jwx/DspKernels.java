@@ -0,0 +1,59 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// float32 block kernels for the data-parallel steps of the decoder:
+// the FIR dot products of the decimator and the line resampler, and
+// the quantization of pixels; the AGC, the PLL and the biquads feed
+// back from one sample to the next and stay scalar double
+//
+// VectorKernels uses jdk.incubator.vector, it is built by the vector
+// profile (JDK 17 and up) and needs the JVM option
+// --add-modules jdk.incubator.vector; without either, load()
+// returns ScalarKernels, which are slower than the double path and
+// serve as its reference and for the vector tails
+interface DspKernels {
+
+    // sum of a[ao + i] * b[bo + i] for i < n
+    float dot(float[] a, int ao, float[] b, int bo, int n);
+
+    // video levels -1 .. 1 to pixels, (v + 1) / 2 clamped to 0 .. 1
+    // as 0 .. 255, or black and white at 0.5 if not grayscale
+    void quantize(float[] src, byte[] dst, int len, boolean grayscale);
+
+    void to_float(double[] src, int off, float[] dst, int dst_off, int len);
+
+    String name();
+
+    boolean vectorized();
+
+    // the vector kernels if this JVM can run them
+    static DspKernels load() {
+        try {
+            Class<?> c = Class.forName("jwx.VectorKernels");
+            return (DspKernels) c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernels();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+
+/**
+ *
+ * @author mgrouch
+ */
+// headless decoder for recorded audio, runs as fast as the CPU allows:
+//
+// java -cp jwx.jar jwx.FileDecoder [-o dir] [-c calibration] [-r rate] [-be] [-ch n] [-bw] [-f] [-nco bits] [-nointerp] [-notrack] [-noautocal] [-nodecim] [-lpm n] [-ioc n] [-float] [-demod pll|quadrature] [-index] files ...
+//
+// WAV files carry their own format, -r selects raw 16-bit PCM at
+// the given rate (little-endian unless -be is given), -nco sets the
+// PLL oscillator table size (0 = Math.sin), -nointerp disables
+// table interpolation, -notrack keeps the line start found
+// during phasing for the whole chart, -noautocal keeps the
+// calibration value fixed instead of refining it from each chart
+// and -nodecim decodes at the file's rate instead of decimating it,
+// -lpm sets the line rate (default 120) and -ioc the index of
+// cooperation, which otherwise follows the start tone, and -float
+// runs the FIR steps with float32 vectors when the JVM has them
+// (see DspKernels) and in double otherwise, -demod selects the
+// demodulator, pll (default) or quadrature (see Demodulator), and
+// -index adds the charts to the ChartIndex of the output directory
+final public class FileDecoder implements DecodeHost {
+
+    final int block_size = 4096;
+    final DecodeFax decode_fax;
+    File out_dir = new File(".");
+    double calibration = 0;
+    long raw_rate = 0;
+    boolean raw_big_endian = false;
+    int channel = 0;
+    boolean grayscale = true;
+    boolean video_filter = false;
+    int nco_table_bits = 12;
+    boolean nco_interpolate = true;
+    boolean sync_tracking = true;
+    boolean auto_calibrate = true;
+    boolean decimate = true;
+    int lines_per_minute = 120;
+    int ioc = 0;
+    boolean float_dsp = false;
+    String demodulator = "pll";
+    boolean indexed = false;
+    ChartIndex index;
+    long sample_rate;
+    String base_name;
+    int chart_count;
+    long sample_total;
+    double total_audio_sec = 0;
+    double total_elapsed = 0;
+
+    public FileDecoder() {
+        decode_fax = new DecodeFax(this);
+    }
+
+    @Override
+    public long get_sample_rate() {
+        return sample_rate;
+    }
+
+    @Override
+    public double get_calibration() {
+        return calibration;
+    }
+
+    @Override
+    public int get_lines_per_minute() {
+        return lines_per_minute;
+    }
+
+    @Override
+    public int get_ioc() {
+        return ioc;
+    }
+
+    @Override
+    public boolean get_grayscale() {
+        return grayscale;
+    }
+
+    @Override
+    public boolean get_video_filter() {
+        return video_filter;
+    }
+
+    @Override
+    public int get_nco_table_bits() {
+        return nco_table_bits;
+    }
+
+    @Override
+    public boolean get_nco_interpolate() {
+        return nco_interpolate;
+    }
+
+    @Override
+    public boolean get_sync_tracking() {
+        return sync_tracking;
+    }
+
+    @Override
+    public boolean get_decimate() {
+        return decimate;
+    }
+
+    @Override
+    public boolean get_float_dsp() {
+        return float_dsp;
+    }
+
+    @Override
+    public String get_demodulator() {
+        return demodulator;
+    }
+
+    @Override
+    public boolean get_auto_calibrate() {
+        return auto_calibrate;
+    }
+
+    @Override
+    public void set_auto_calibration(double cal_val) {
+        CommonCode.p(String.format("  calibration %.4e", cal_val));
+        calibration = cal_val;
+    }
+
+    @Override
+    public ChartSink new_chart(int width, double cal_val) {
+        chart_count++;
+        String path = new File(out_dir, String.format("%s_%03d.png", base_name, chart_count)).getPath();
+        CommonCode.p("  chart " + path);
+        if (indexed && index == null) {
+            // before the chart's file exists, or a new index takes it in
+            try {
+                index = new ChartIndex(out_dir);
+            } catch (IOException e) {
+                CommonCode.p("chart index: " + e);
+                indexed = false;
+            }
+        }
+        ChartFile cf = new ChartFile(path, width, cal_val);
+        cf.chart.index = index;
+        return cf;
+    }
+
+    @Override
+    public void cancel_calibrate() {
+    }
+
+    @Override
+    public void enable_input(boolean enable) {
+    }
+
+    @Override
+    public void tell_user(String message, String title) {
+        CommonCode.p(title + ": " + message);
+    }
+
+    private AudioInputStream open_stream(File f) throws IOException, UnsupportedAudioFileException {
+        if (raw_rate > 0) {
+            AudioFormat fmt = new AudioFormat(raw_rate, 16, 1, true, raw_big_endian);
+            InputStream is = new BufferedInputStream(new FileInputStream(f));
+            return new AudioInputStream(is, fmt, f.length() / fmt.getFrameSize());
+        }
+        AudioInputStream ais = AudioSystem.getAudioInputStream(f);
+        AudioFormat fmt = ais.getFormat();
+        if (fmt.getEncoding() != AudioFormat.Encoding.PCM_SIGNED || fmt.getSampleSizeInBits() != 16) {
+            AudioFormat pcm = new AudioFormat(fmt.getSampleRate(), 16, fmt.getChannels(), true, fmt.isBigEndian());
+            ais = AudioSystem.getAudioInputStream(pcm, ais);
+        }
+        return ais;
+    }
+
+    // returns the real-time factor, i.e. seconds of audio per second of wall time
+    public double decode(File f) throws IOException, UnsupportedAudioFileException {
+        base_name = f.getName().replaceFirst("\\.[^.]*$", "");
+        chart_count = 0;
+        sample_total = 0;
+        long start = System.nanoTime();
+        try (AudioInputStream ais = open_stream(f)) {
+            AudioFormat fmt = ais.getFormat();
+            int frame_size = fmt.getFrameSize();
+            int ch = Math.min(channel, fmt.getChannels() - 1);
+            sample_rate = (long) fmt.getSampleRate();
+            byte[] byte_buf = new byte[block_size * frame_size];
+            double[] sample_buf = new double[block_size];
+            decode_fax.init_chart_read(true);
+            int n;
+            while ((n = read_fully(ais, byte_buf)) > 0) {
+                int frames = n / frame_size;
+                PcmCodec.decode(byte_buf, frames, frame_size, ch * 2, fmt.isBigEndian(), sample_buf);
+                decode_fax.process_data(sample_buf, frames);
+                sample_total += frames;
+            }
+            decode_fax.init_chart_read(false);
+        }
+        // the charts are written while decoding goes on, the
+        // file is done when they are
+        ChartFinisher.drain();
+        double elapsed = (System.nanoTime() - start) * 1e-9;
+        double audio_sec = (double) sample_total / sample_rate;
+        double rtf = (elapsed > 0) ? audio_sec / elapsed : 0;
+        total_audio_sec += audio_sec;
+        total_elapsed += elapsed;
+        CommonCode.p(String.format("%s: %.1f s audio in %.2f s, %.1fx real time, %d chart(s)",
+                f.getName(), audio_sec, elapsed, rtf, chart_count));
+        return rtf;
+    }
+
+    private int read_fully(InputStream is, byte[] buf) throws IOException {
+        int total = 0;
+        int n;
+        while (total < buf.length && (n = is.read(buf, total, buf.length - total)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        FileDecoder fd = new FileDecoder();
+        java.util.List<File> files = new java.util.ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o":
+                        fd.out_dir = new File(args[++i]);
+                        fd.out_dir.mkdirs();
+                        break;
+                    case "-c":
+                        fd.calibration = Double.parseDouble(args[++i]);
+                        break;
+                    case "-r":
+                        fd.raw_rate = Long.parseLong(args[++i]);
+                        break;
+                    case "-be":
+                        fd.raw_big_endian = true;
+                        break;
+                    case "-ch":
+                        fd.channel = Integer.parseInt(args[++i]);
+                        break;
+                    case "-bw":
+                        fd.grayscale = false;
+                        break;
+                    case "-f":
+                        fd.video_filter = true;
+                        break;
+                    case "-nco":
+                        fd.nco_table_bits = Integer.parseInt(args[++i]);
+                        break;
+                    case "-nointerp":
+                        fd.nco_interpolate = false;
+                        break;
+                    case "-notrack":
+                        fd.sync_tracking = false;
+                        break;
+                    case "-noautocal":
+                        fd.auto_calibrate = false;
+                        break;
+                    case "-nodecim":
+                        fd.decimate = false;
+                        break;
+                    case "-lpm":
+                        fd.lines_per_minute = Integer.parseInt(args[++i]);
+                        break;
+                    case "-ioc":
+                        fd.ioc = Integer.parseInt(args[++i]);
+                        break;
+                    case "-float":
+                        fd.float_dsp = true;
+                        break;
+                    case "-demod":
+                        fd.demodulator = args[++i];
+                        break;
+                    case "-index":
+                        fd.indexed = true;
+                        break;
+                    default:
+                        files.add(new File(args[i]));
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            CommonCode.p("bad argument: " + e);
+            files.clear();
+        }
+        if (files.isEmpty()) {
+            CommonCode.p("usage: FileDecoder [-o dir] [-c calibration] [-r rate] [-be] [-ch n] [-bw] [-f] [-nco bits] [-nointerp] [-notrack] [-noautocal] [-nodecim] [-lpm n] [-ioc n] [-float] [-demod pll|quadrature] [-index] files ...");
+            System.exit(1);
+        }
+        if (fd.float_dsp) {
+            DspKernels k = DspKernels.load();
+            CommonCode.p(k.vectorized() ? "dsp kernels: " + k.name() : "no vector kernels, decoding in double");
+        }
+        for (File f : files) {
+            try {
+                fd.decode(f);
+            } catch (IOException | UnsupportedAudioFileException e) {
+                CommonCode.p(f + ": " + e);
+            }
+        }
+        if (fd.index != null) {
+            fd.index.close();
+        }
+        if (fd.total_elapsed > 0) {
+            CommonCode.p(String.format("total: %.1f s audio in %.2f s, %.1fx real time",
+                    fd.total_audio_sec, fd.total_elapsed, fd.total_audio_sec / fd.total_elapsed));
+        }
+    }
+}
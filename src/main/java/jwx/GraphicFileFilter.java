@@ -32,7 +32,7 @@ public class GraphicFileFilter extends FileFilter {
 
     @Override
     public boolean accept(File f) {
-        return f.toString().matches(".*\\.(jpe?g|JPE?G)$");
+        return f.toString().matches("(?i).*\\.(jpe?g|png)$");
     }
 
     @Override
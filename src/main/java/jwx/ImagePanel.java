@@ -19,11 +19,8 @@
  ***************************************************************************/
 package jwx;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.*;
-import java.io.File;
 import java.io.IOException;
 
 /**
@@ -33,22 +30,12 @@ import java.io.IOException;
 public class ImagePanel extends javax.swing.JPanel {
 
     final ChartPanel parent;
-    BufferedImage buffered_image = null;
-    java.util.List<byte[]> image_array;
-    int height;
-    int width;
-    byte[] bbuffer = null;
-    int bbuffer_height = 0;
-    final int block_size = 400;
-    int old_line = 0;
+    final ChartImage chart;
     int imagew, imageh;
     int scaledw, scaledh;
-    final File file;
     boolean receiving_fax;
     double image_scale = 1.0;
     int mousex, mousey;
-    int translate_val = 0;
-    boolean changed = false;
     static final long serialVersionUID = 22045;
 
     /** Creates new form ImagePanel
@@ -56,60 +43,28 @@ public class ImagePanel extends javax.swing.JPanel {
      * @param path */
     public ImagePanel(ChartPanel p, String path) {
         parent = p;
-        width = parent.parent.default_image_width;
         initComponents();
-        image_array = new java.util.ArrayList<>();
-        old_line = 0;
-        file = new File(path);
+        chart = new ChartImage(path, parent.image_width, parent.calibration_val);
+        chart.index = parent.parent.chart_index;
         process_path();
     }
 
     private void process_path() {
         try {
-            receiving_fax = !file.exists();
+            receiving_fax = !chart.file.exists();
             if (receiving_fax) {
-                file.createNewFile();
+                chart.start_stream(true);
             } else {
-                load_file();
+                chart.load_file();
+                set_image_scale();
             }
         } catch (IOException e) {
             CommonCode.p("process_path: " + e);
         }
     }
 
-    private void load_file() {
-        try {
-            buffered_image = ImageIO.read(file);
-            width = buffered_image.getWidth();
-            height = buffered_image.getHeight();
-            load_data_array();
-        } catch (IOException e) {
-            CommonCode.p("load file: " + e);
-        }
-    }
-
-    private void load_data_array() {
-        image_array.clear();
-        Raster raster = buffered_image.getData();
-        DataBufferByte dbb = (DataBufferByte) raster.getDataBuffer();
-        byte[][] bb = dbb.getBankData();
-        int len = bb[0].length;
-        int j = 0;
-        byte[] line = new byte[width];
-        for (int i = 0; i < len; i++) {
-            line[j++] = bb[0][i];
-            if (j >= width) {
-                image_array.add(line);
-                j = 0;
-                line = new byte[width];
-            }
-        }
-        update_image(true);
-        changed = false;
-    }
-
     public boolean get_changed() {
-        return changed;
+        return chart.changed;
     }
 
     public boolean receiving_fax() {
@@ -117,67 +72,20 @@ public class ImagePanel extends javax.swing.JPanel {
     }
 
     public void save_file() {
-        if (changed && buffered_image != null && buffered_image.getHeight() > 0) {
-            try {
-                ImageIO.write(buffered_image, "jpg", file);
-                changed = false;
-            } catch (IOException e) {
-                CommonCode.p("save file: " + e);
-            }
-        }
+        chart.save_file();
     }
 
     public void update_image(boolean erase) {
-        height = image_array.size();
-        if (erase) {
-            bbuffer = null;
-        }
-        if (bbuffer == null) {
-            bbuffer_height = 0;
-            old_line = 0;
-        }
-        if (height > 0 && height > old_line) {
-            // if bbuffer has become too small
-            if (height >= bbuffer_height) {
-                while (height >= bbuffer_height) {
-                    bbuffer_height += block_size;
-                }
-                // create new byte buffer
-                byte[] new_bbuffer = new byte[bbuffer_height * width];
-                // copy old contents if they exist
-                if (bbuffer != null) {
-                    System.arraycopy(bbuffer, 0, new_bbuffer, 0, bbuffer.length);
-                }
-                bbuffer = new_bbuffer;
-            }
-            int pos = width * old_line;
-            for (int i = old_line; i < height; i++) {
-                byte[] line = image_array.get(i);
-                System.arraycopy(line, 0, bbuffer, pos, width);
-                pos += width;
-            }
-            old_line = height;
-            buffered_image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-            DataBuffer dbb = new DataBufferByte(bbuffer, width * height);
-            SampleModel sm = buffered_image.getSampleModel();
-            Raster r = Raster.createRaster(sm, dbb, null);
-            buffered_image.setData(r);
+        if (chart.update_image(erase)) {
             set_image_scale();
-            changed = true;
-        }
-        repaint();
-    }
-
-    public void add_line(byte[] line) {
-        if (translate_val != 0) {
-            line = CommonCode.translate_line(line, translate_val);
-        }
-        if (parent.calibration_val != 0.0) {
-            int y = image_array.size();
-            line = CommonCode.clock_correct_line(line, y, width * parent.calibration_val);
+            if (erase) {
+                repaint();
+            } else {
+                // only the rows added since the last update
+                int y = (int) (chart.dirty_from * image_scale);
+                repaint(0, y, scaledw, scaledh - y);
+            }
         }
-        image_array.add(line);
-        changed = true;
     }
 
     public void scroll_test(boolean force) {
@@ -190,9 +98,9 @@ public class ImagePanel extends javax.swing.JPanel {
     }
 
     public void set_image_scale() {
-        if (buffered_image != null) {
-            imagew = buffered_image.getWidth(this);
-            imageh = buffered_image.getHeight(this);
+        if (chart.height > 0) {
+            imagew = chart.width;
+            imageh = chart.height;
             scaledw = imagew;
             scaledh = imageh;
             image_scale = 1.0;
@@ -201,7 +109,7 @@ public class ImagePanel extends javax.swing.JPanel {
                 // scale to viewport width
                 int dw = vs.width - 1;
                 if (dw == 0) {
-                    dw = width;
+                    dw = chart.width;
                 }
                 image_scale = (double) dw / imagew;
                 scaledw = (int) (imagew * image_scale);
@@ -261,31 +169,16 @@ public class ImagePanel extends javax.swing.JPanel {
 
     }
 
-    private java.util.List<byte[]> translate_image(java.util.List<byte[]> src, int delta) {
-        java.util.List<byte[]> b = new java.util.ArrayList<>();
-        src.forEach((a) -> b.add(CommonCode.translate_line(a, delta)));
-        return b;
-    }
-
     private void translate() {
         if (mouse_in_image() && CommonCode.ask_user(parent.parent, "Okay to realign image?", "Adjust Image Alignment")) {
-            int delta = mousex;
-            translate_val = (translate_val + delta + width * 8) % width;
-            image_array = translate_image(image_array, delta);
+            chart.translate(mousex);
             update_image(true);
         }
     }
 
     public void clock_correct(double delta) {
         if (!receiving_fax) {
-            delta *= width;
-            java.util.List<byte[]> b = new java.util.ArrayList<>();
-            int line = 0;
-            for (byte[] a : image_array) {
-                b.add(CommonCode.clock_correct_line(a, line, delta));
-                line++;
-            }
-            image_array = b;
+            chart.clock_correct(delta);
             update_image(true);
         }
     }
@@ -294,55 +187,46 @@ public class ImagePanel extends javax.swing.JPanel {
      *
      */
     public void invert_image() {
-        image_array.forEach((b) -> {
-            for (int i = 0; i < b.length; i++) {
-                b[i] = (byte) (255 - b[i]);
-            }
-        });
+        chart.invert();
         update_image(true);
     }
 
     public void rotate_image(boolean cw) {
-        if (image_array != null) {
-
-            java.util.List<byte[]> dest;
-            dest = new java.util.ArrayList<>();
-            if (cw) {
-                for (int y = 0; y < width; y++) {
-                    byte[] row = new byte[height];
-                    for (int x = 0; x < height; x++) {
-                        row[x] = image_array.get(height - x - 1)[y];
-                    }
-                    dest.add(row);
-                }
-            } else { // ccw
-                for (int y = 0; y < width; y++) {
-                    byte[] row = new byte[height];
-                    for (int x = 0; x < height; x++) {
-                        row[x] = image_array.get(x)[width - y - 1];
-                    }
-                    dest.add(row);
-                }
-            }
-            image_array = dest;
-            int temp = height;
-            height = width;
-            width = temp;
+        if (chart.raster != null) {
+            chart.rotate(cw);
             update_image(true);
         }
     }
 
     @Override
     public void paintComponent(Graphics g) {
-        if (buffered_image != null) {
-            Graphics2D g2 = (Graphics2D) g;
+        ChartRaster raster = chart.raster;
+        int h = Math.min(chart.height, raster.height);
+        if (h > 0) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            double scale = 1.0;
             if (parent.parent.scaled_images) {
                 g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
                         RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                g2.drawImage(buffered_image, 0, 0, scaledw, scaledh, this);
-            } else {
-                g2.drawImage(buffered_image, 0, 0, this);
+                scale = image_scale;
+                g2.scale(scale, scale);
+            }
+            // draw only the tiles that intersect the clip
+            int y0 = 0;
+            int y1 = h;
+            Rectangle clip = g.getClipBounds();
+            if (clip != null) {
+                y0 = Math.max(0, (int) (clip.y / scale) - 1);
+                y1 = Math.min(h, (int) Math.ceil((clip.y + clip.height) / scale) + 1);
+            }
+            int w = raster.width;
+            int tr = raster.tile_rows;
+            for (int t = y0 / tr; t * tr < y1; t++) {
+                int top = t * tr;
+                int rows = Math.min(tr, h - top);
+                g2.drawImage(raster.tile_image(t), 0, top, w, top + rows, 0, 0, w, rows, this);
             }
+            g2.dispose();
         }
     }
 
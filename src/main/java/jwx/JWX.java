@@ -40,7 +40,7 @@ import java.util.*;
  *
  * @author lutusp
  */
-final public class JWX extends javax.swing.JFrame {
+final public class JWX extends javax.swing.JFrame implements DecodeHost {
 
     final boolean debug;
     final String VERSION = "3.0";
@@ -51,17 +51,37 @@ final public class JWX extends javax.swing.JFrame {
     final String default_volume = "0";
     final int delete_hours = 48;
     final int max_open_charts = 16;
+    // what is known of the charts in chart_path, null if the index
+    // can't be kept and the directory is scanned instead
+    ChartIndex chart_index;
     ConfigManager config_mgr;
     final DecodeFax decode_fax;
     final AudioProcessor audio_processor;
     ToggleButtonController grayscale, afc, fullscale, scroll_to_bottom, filter;
     ComboBoxController data_rate, threshold, monitor_volume, audio_input, audio_output;
     CalibrationController calibration;
+    ParameterController nco_table_bits, nco_interpolate;
+    ParameterController capture_block_ms, capture_buffer_ms, capture_blocking;
+    ParameterController sync_tracking, auto_calibrate;
+    // float32 kernels for the FIR steps, see DspKernels
+    ParameterController float_dsp;
+    ParameterController demodulator;
+    // line rate, and index of cooperation, 0 to follow the start tone
+    ParameterController lines_per_minute, ioc;
+    // decimate capture rates above 16 kHz before decoding
+    ParameterController decimate;
+    // spectrum view frames per second, 0 turns it off
+    ParameterController spectrum_fps;
+    // capture channels, each decoded separately, and the calibration
+    // values of channels 2 and up, comma separated
+    ParameterController capture_channels, channel_calibration;
+    // decoders of channels 2 and up, created as needed
+    final List<ChannelHost> channel_hosts = new ArrayList<>();
     FrameController appsize;
     final String app_path, app_name, program_name, user_dir, data_path, chart_path, init_path, file_sep;
-    // the default image width is based on the IOC = Index of Coooperation
-    // IOC 576 originates in the old mechanical fax drum diameter, and 576 * pi = 1809.557
-    final int default_image_width = 1810;
+    // the default image width is based on the IOC = Index of Coooperation,
+    // see DecodeFax.image_width()
+    final int default_image_width = DecodeFax.image_width(576);
     final int timer_period_ms = 500;
     long old_samplecount = 0;
     final List<ChartPanel> chart_list;
@@ -69,6 +89,7 @@ final public class JWX extends javax.swing.JFrame {
     final Timer periodic_timer;
     ChartPanel current_chart = null;
     HelpPane help_pane = null;
+    SpectrumPanel spectrum_panel;
     boolean scaled_images;
     int calibrate_phase = 0;
     double old_mouse_x, old_mouse_y;
@@ -94,6 +115,11 @@ final public class JWX extends javax.swing.JFrame {
         if (!f.exists()) {
             f.mkdirs();
         }
+        try {
+            chart_index = new ChartIndex(f);
+        } catch (IOException e) {
+            CommonCode.p("chart index: " + e);
+        }
         init_path = data_path + file_sep + app_name + ".ini";
         program_name = app_name + " " + VERSION;
         setTitle(program_name);
@@ -103,6 +129,10 @@ final public class JWX extends javax.swing.JFrame {
         setup_values();
         checkOldCharts();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> inner_close()));
+        spectrum_panel = new SpectrumPanel();
+        tabbed_pane.addTab("Spectrum", spectrum_panel);
+        tabbed_pane.setToolTipTextAt(tabbed_pane.indexOfComponent(spectrum_panel), "Live audio spectrum");
+        recover_charts();
         // these next two must be created in displayed order
         decode_fax = new DecodeFax(this);
         decode_fax.init_chart_read(true);
@@ -119,6 +149,7 @@ final public class JWX extends javax.swing.JFrame {
             chart_list.forEach(ChartPanel::perform_periodic);
             set_control_enables();
             decode_fax.periodic_actions();
+            audio_processor.channel_hosts.forEach(h -> h.decode_fax.periodic_actions());
             set_machine_status();
             set_audio_status();
             set_frequency_status();
@@ -133,22 +164,36 @@ final public class JWX extends javax.swing.JFrame {
             double free = Runtime.getRuntime().freeMemory();
             String str = String.format(
                     "time %f reset_target_time %f %s chart %d free mem %.2e\n"
-                    + "  ... integ %.2f wsig %.2f image_line %d sample_count %d audio_read %d \n"
-                    + "... bi start %.4f active %d bi end %.4f active %d",
+                    + "  ... integ %.2f wsig %.2f image_line %d sample_count %d audio_read %d overruns %d ring high water %.1f%%\n"
+                    + "... bi start %.4f active %d (%.2f) start 288 %.4f active %d (%.2f) bi end %.4f active %d (%.2f)\n"
+                    + "... charts written %d (%d by decoder) queue %d max %d write ms %.1f max %.1f",
                     decode_fax.time_sec,
                     reset_target_time,
                     decode_fax.state.toString(),
                     chart_number,
                     free,
-                    decode_fax.pll_integral,
+                    decode_fax.demod_integral(),
                     decode_fax.wsig,
                     decode_fax.image_line,
                     decode_fax.sample_count,
                     audio_read,
-                    decode_fax.gstart.value(),
-                    decode_fax.gstart.active() ? 1 : 0,
-                    decode_fax.gend.value(),
-                    decode_fax.gend.active() ? 1 : 0);
+                    audio_processor.overruns(),
+                    audio_processor.ring_high_water() * 100,
+                    decode_fax.tones.value(decode_fax.tone_start_576),
+                    decode_fax.tones.active(decode_fax.tone_start_576) ? 1 : 0,
+                    decode_fax.tones.relative(decode_fax.tone_start_576),
+                    decode_fax.tones.value(decode_fax.tone_start_288),
+                    decode_fax.tones.active(decode_fax.tone_start_288) ? 1 : 0,
+                    decode_fax.tones.relative(decode_fax.tone_start_288),
+                    decode_fax.tones.value(decode_fax.tone_stop),
+                    decode_fax.tones.active(decode_fax.tone_stop) ? 1 : 0,
+                    decode_fax.tones.relative(decode_fax.tone_stop),
+                    ChartFinisher.jobs,
+                    ChartFinisher.caller_runs,
+                    ChartFinisher.queue_depth(),
+                    ChartFinisher.max_depth,
+                    ChartFinisher.last_ms,
+                    ChartFinisher.max_ms);
             p(str);
         }
     }
@@ -168,7 +213,7 @@ final public class JWX extends javax.swing.JFrame {
     private void set_audio_status() {
         StringBuilder vl = new StringBuilder(" Audio: ");
         if (audio_processor.read_valid()) {
-            double v = decode_fax.gain_level;
+            double v = decode_fax.input_level();
             int iv = (int) (Math.sqrt(v) / 14.0);
             if (v < 1.0) {
                 vl.append("None");
@@ -196,17 +241,20 @@ final public class JWX extends javax.swing.JFrame {
         String s = (receive ? "Receive" : "Standby");
         if (receive) {
             s += " | " + decode_fax.state;
+            for (ChannelHost h : audio_processor.channel_hosts) {
+                s += " | " + h.label() + " " + h.decode_fax.state;
+            }
         }
         machine_status_label.setText(s);
     }
 
     private void set_control_enables() {
-        boolean receiving_fax = decode_fax.receiving_fax();
+        boolean receiving_fax = receiving_any();
         boolean current_chart_receiving = (current_chart != null && current_chart.image_panel.receiving_fax());
         //quit_button.setEnabled(!receiving_fax);
         standby_button.setEnabled(!receiving_fax);
-        lock_button.setEnabled(!receiving_fax && decode_fax.enabled());
-        unlock_button.setEnabled(receiving_fax);
+        lock_button.setEnabled(!decode_fax.receiving_fax() && decode_fax.enabled());
+        unlock_button.setEnabled(decode_fax.receiving_fax());
         receive_button.setEnabled(!decode_fax.enabled());
         standby_button.setEnabled(decode_fax.enabled() && !receiving_fax);
         defaults_button.setEnabled(!decode_fax.enabled());
@@ -217,8 +265,10 @@ final public class JWX extends javax.swing.JFrame {
         audio_input_combobox.setEnabled(!decode_fax.enabled());
         // update tone threshold
         double thresh = this.threshold.get_percent_value();
-        decode_fax.gstart.set_threshold(thresh * decode_fax.g_gain_adjust);
-        decode_fax.gend.set_threshold(thresh * decode_fax.g_gain_adjust);
+        decode_fax.tones.set_threshold(thresh * decode_fax.g_gain_adjust);
+        for (ChannelHost h : audio_processor.channel_hosts) {
+            h.decode_fax.tones.set_threshold(thresh * h.decode_fax.g_gain_adjust);
+        }
     }
 
     private List<String> make_numeric_list(int a, int b, int step) {
@@ -263,6 +313,21 @@ final public class JWX extends javax.swing.JFrame {
         filter = new ToggleButtonController(filter_checkbox, false);
 
         calibration = new CalibrationController(calibration_textfield, "0", this);
+        nco_table_bits = new ParameterController("12");
+        nco_interpolate = new ParameterController("true");
+        capture_block_ms = new ParameterController("50");
+        capture_buffer_ms = new ParameterController("500");
+        capture_blocking = new ParameterController("false");
+        sync_tracking = new ParameterController("true");
+        auto_calibrate = new ParameterController("true");
+        lines_per_minute = new ParameterController("120");
+        ioc = new ParameterController("0");
+        decimate = new ParameterController("true");
+        float_dsp = new ParameterController("false");
+        demodulator = new ParameterController("pll");
+        spectrum_fps = new ParameterController("10");
+        capture_channels = new ParameterController("1");
+        channel_calibration = new ParameterController("");
         appsize = new FrameController(this);
         config_mgr = new ConfigManager(this, init_path);
     }
@@ -276,11 +341,154 @@ final public class JWX extends javax.swing.JFrame {
             fullscale.set_value(false);
             scroll_to_bottom.set_value(true);
             filter.set_value(false);
+            nco_table_bits.reset();
+            nco_interpolate.reset();
+            capture_block_ms.reset();
+            capture_buffer_ms.reset();
+            capture_blocking.reset();
+            sync_tracking.reset();
+            auto_calibrate.reset();
+            lines_per_minute.reset();
+            ioc.reset();
+            decimate.reset();
+            float_dsp.reset();
+            demodulator.reset();
+            spectrum_fps.reset();
+            capture_channels.reset();
+            channel_calibration.reset();
+        }
+    }
+
+    @Override
+    public long get_sample_rate() {
+        return data_rate.get_value();
+    }
+
+    @Override
+    public double get_calibration() {
+        return calibration.get_dvalue();
+    }
+
+    @Override
+    public int get_lines_per_minute() {
+        return lines_per_minute.get_value();
+    }
+
+    @Override
+    public int get_ioc() {
+        return ioc.get_value();
+    }
+
+    @Override
+    public boolean get_grayscale() {
+        return grayscale.get_value();
+    }
+
+    @Override
+    public boolean get_video_filter() {
+        return filter.get_value();
+    }
+
+    @Override
+    public int get_nco_table_bits() {
+        return nco_table_bits.get_value();
+    }
+
+    @Override
+    public boolean get_nco_interpolate() {
+        return nco_interpolate.is_true();
+    }
+
+    @Override
+    public boolean get_sync_tracking() {
+        return sync_tracking.is_true();
+    }
+
+    @Override
+    public boolean get_decimate() {
+        return decimate.is_true();
+    }
+
+    @Override
+    public boolean get_float_dsp() {
+        return float_dsp.is_true();
+    }
+
+    @Override
+    public String get_demodulator() {
+        return demodulator.toString();
+    }
+
+    @Override
+    public boolean get_auto_calibrate() {
+        return auto_calibrate.is_true();
+    }
+
+    @Override
+    public void set_auto_calibration(double cal_val) {
+        if (debug) {
+            p(String.format("auto calibration %.4e", cal_val));
+        }
+        calibration.set_auto_value(cal_val);
+    }
+
+    // whether the decoder of any channel is receiving a chart
+    public boolean receiving_any() {
+        if (decode_fax.receiving_fax()) {
+            return true;
+        }
+        for (ChannelHost h : audio_processor.channel_hosts) {
+            if (h.decode_fax.receiving_fax()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // hosts for channels 1 .. n-1
+    List<ChannelHost> channel_hosts(int n) {
+        while (channel_hosts.size() < n - 1) {
+            channel_hosts.add(new ChannelHost(this, channel_hosts.size() + 1));
+        }
+        return new ArrayList<>(channel_hosts.subList(0, Math.max(0, n - 1)));
+    }
+
+    double get_channel_calibration(int channel) {
+        String[] list = channel_calibration.toString().split(",");
+        int i = channel - 1;
+        try {
+            if (i < list.length && !list[i].trim().isEmpty()) {
+                return Double.parseDouble(list[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the main value
         }
+        return calibration.get_dvalue();
     }
 
-    public ChartPanel new_chart(String path, double cal_val) {
-        ChartPanel panel = new ChartPanel(this, path, cal_val);
+    // called from the channel's decoder thread
+    synchronized void set_channel_calibration(int channel, double cal_val) {
+        List<String> list = new ArrayList<>(Arrays.asList(channel_calibration.toString().split(",", -1)));
+        while (list.size() < channel) {
+            list.add("");
+        }
+        list.set(channel - 1, String.format("%.4e", cal_val));
+        channel_calibration.set_value(String.join(",", list));
+    }
+
+    @Override
+    public void enable_input(boolean enable) {
+        audio_processor.enable_audio_read(enable);
+    }
+
+    @Override
+    public void tell_user(String message, String title) {
+        CommonCode.tell_user(this, message, title);
+    }
+
+    // decoder threads of all channels may call this
+    public synchronized ChartPanel new_chart(String path, int width, double cal_val) {
+        ChartPanel panel = new ChartPanel(this, path, width, cal_val);
         chart_list.add(panel);
         chart_number++;
         tabbed_pane.addTab("chart " + chart_number, panel);
@@ -296,9 +504,10 @@ final public class JWX extends javax.swing.JFrame {
         return panel;
     }
 
-    public ChartPanel new_chart(double cal_val) {
+    @Override
+    public ChartPanel new_chart(int width, double cal_val) {
         String path = chart_path + file_sep + create_date_time_filename();
-        return new_chart(path, cal_val);
+        return new_chart(path, width, cal_val);
     }
 
     public String create_date_time_filename() {
@@ -307,7 +516,18 @@ final public class JWX extends javax.swing.JFrame {
         String s = sdf.format(date);
         s = s.replaceFirst("(\\.\\d).*", "$1");
         s = s.replaceAll("-", ".");
-        return "chart_" + s + ".jpg";
+        return "chart_" + s + ".png";
+    }
+
+    // charts a crash or power loss left half received, rebuilt from
+    // their journals and opened
+    private void recover_charts() {
+        for (File f : ChartJournal.recover_all(new File(chart_path))) {
+            if (chart_index != null) {
+                chart_index.saved(f, -1);
+            }
+            new_chart(f.toString(), default_image_width, calibration.get_dvalue());
+        }
     }
 
     private void load_image() {
@@ -319,7 +539,7 @@ final public class JWX extends javax.swing.JFrame {
         if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File[] files = fc.getSelectedFiles();
             for (File f : files) {
-                new_chart(f.toString(), calibration.get_dvalue());
+                new_chart(f.toString(), default_image_width, calibration.get_dvalue());
             }
         }
     }
@@ -329,9 +549,11 @@ final public class JWX extends javax.swing.JFrame {
         if (comp instanceof ChartPanel) {
             ChartPanel cp = (ChartPanel) comp;
             chart_list.remove(cp);
+            cp.image_panel.chart.release();
         }
     }
 
+    @Override
     public void cancel_calibrate() {
         calibrate_control(-1, 0, 0);
     }
@@ -363,7 +585,7 @@ final public class JWX extends javax.swing.JFrame {
                     } else if (calibrate_phase == 2) {
                         double div = y - old_mouse_y;
                         if (div != 0.0) {
-                            cval = (x - old_mouse_x) / (div * current_chart.image_panel.width);
+                            cval = (x - old_mouse_x) / (div * current_chart.image_panel.chart.width);
                         } else {
                             cval = 0;
                         }
@@ -461,9 +683,16 @@ final public class JWX extends javax.swing.JFrame {
     private ArrayList<File> getOldChartList() {
         final long delta_t = (long) delete_hours * 60 * 60 * 1000;
         final long now = new Date().getTime();
+        if (chart_index != null) {
+            ArrayList<File> dlist = new ArrayList<>();
+            for (ChartIndex.Entry e : chart_index.ended_before(now - delta_t)) {
+                dlist.add(new File(chart_path, e.name));
+            }
+            return dlist;
+        }
         File dp = new File(chart_path);
         FilenameFilter ff;
-        ff = (File f, String name1) -> name1.matches("^(?i).*\\.jpg$");
+        ff = (File f, String name1) -> name1.matches("^(?i).*\\.(jpe?g|png)$");
         File[] flist = dp.listFiles(ff);
         ArrayList<File> dlist;
         dlist = new ArrayList<>();
@@ -486,7 +715,12 @@ final public class JWX extends javax.swing.JFrame {
         int n = dlist.size();
         if (n > 0) {
             if (CommonCode.ask_user(this, "Okay to delete " + n + " chart(s) older than " + delete_hours + " hours?", "Delete old charts")) {
-                dlist.forEach(File::delete);
+                for (File df : dlist) {
+                    df.delete();
+                    if (chart_index != null) {
+                        chart_index.remove(df.getName());
+                    }
+                }
             }
         } else {
             CommonCode.tell_user(this, "There are no charts older than " + delete_hours + " hours.", "Delete old charts");
@@ -495,7 +729,7 @@ final public class JWX extends javax.swing.JFrame {
     }
 
     private void close() {
-        if (!decode_fax.receiving_fax()
+        if (!receiving_any()
                 || CommonCode.ask_user(this, "JWX is receiving a chart.\nOkay to save partial chart and quit?", "Receiving Chart")) {
             inner_close();
             System.exit(0);
@@ -507,6 +741,10 @@ final public class JWX extends javax.swing.JFrame {
         decode_fax.init_chart_read(false);
         periodic_timer.cancel();
         close_inactive_charts(false);
+        ChartFinisher.drain();
+        if (chart_index != null) {
+            chart_index.close();
+        }
         config_mgr.write_config_file();
     }
 
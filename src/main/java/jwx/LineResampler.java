@@ -0,0 +1,148 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// resamples a received scan line to exactly width pixels
+//
+// each pixel is a weighted sum of the samples around its center,
+// the weights come from the Keys cubic kernel and are computed once
+// per line geometry, one set per pixel; when a pixel spans more
+// than a sample the kernel is stretched to match, so it also does
+// the averaging the pixel needs and nothing above the pixel rate
+// aliases into the chart
+final class LineResampler {
+
+    int width;
+    double increm;
+    // weights per pixel
+    int taps;
+    // the first sample of each pixel, and its taps weights
+    int[] first;
+    double[] weights;
+    // the float32 path, see DspKernels, null for double
+    DspKernels kernels;
+    float[] fweights;
+    float[] fline;
+    float[] fpixels;
+
+    // width pixels from lines of increm samples per pixel
+    public void set(int w, double inc) {
+        set(w, inc, null);
+    }
+
+    public void set(int w, double inc, DspKernels k) {
+        if (w == width && inc == increm && k == kernels) {
+            return;
+        }
+        width = w;
+        increm = inc;
+        kernels = k;
+        double scale = Math.max(1.0, inc);
+        double support = 2 * scale;
+        // an even count, the sums are split in two
+        taps = ((int) Math.ceil(2 * support) + 2) & ~1;
+        first = new int[w];
+        weights = new double[w * taps];
+        for (int x = 0; x < w; x++) {
+            double c = (x + 0.5) * inc - 0.5;
+            int f = (int) Math.floor(c - support) + 1;
+            first[x] = f;
+            double sum = 0;
+            for (int j = 0; j < taps; j++) {
+                double v = kernel((f + j - c) / scale);
+                weights[x * taps + j] = v;
+                sum += v;
+            }
+            // unit gain, so a flat line stays exactly flat
+            for (int j = 0; j < taps; j++) {
+                weights[x * taps + j] /= sum;
+            }
+        }
+        if (k != null) {
+            fweights = new float[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                fweights[i] = (float) weights[i];
+            }
+            fpixels = new float[w];
+        }
+    }
+
+    // Keys cubic convolution kernel, a = -0.5
+    static double kernel(double t) {
+        t = Math.abs(t);
+        if (t < 1) {
+            return (1.5 * t - 2.5) * t * t + 1;
+        }
+        if (t < 2) {
+            return ((-0.5 * t + 2.5) * t - 4) * t + 2;
+        }
+        return 0;
+    }
+
+    // the line is src[0 .. len - 1], samples past either end repeat
+    // the end sample; writes width pixels to dst
+    public void resample(double[] src, int len, double[] dst) {
+        for (int x = 0; x < width; x++) {
+            int f = first[x];
+            int w = x * taps;
+            double sum = 0;
+            if (f >= 0 && f + taps <= len) {
+                // two partial sums, so each add needn't wait for the last
+                double s0 = 0, s1 = 0;
+                for (int j = 0; j < taps; j += 2) {
+                    s0 += src[f + j] * weights[w + j];
+                    s1 += src[f + j + 1] * weights[w + j + 1];
+                }
+                sum = s0 + s1;
+            } else {
+                for (int j = 0; j < taps; j++) {
+                    int k = Math.max(0, Math.min(len - 1, f + j));
+                    sum += src[k] * weights[w + j];
+                }
+            }
+            dst[x] = sum;
+        }
+    }
+
+    // the float32 path, straight to pixels, see DspKernels.quantize()
+    public void resample(double[] src, int len, byte[] dst, boolean grayscale) {
+        if (fline == null || fline.length < len) {
+            fline = new float[len];
+        }
+        kernels.to_float(src, 0, fline, 0, len);
+        for (int x = 0; x < width; x++) {
+            int f = first[x];
+            if (f >= 0 && f + taps <= len) {
+                fpixels[x] = kernels.dot(fweights, x * taps, fline, f, taps);
+            } else {
+                float sum = 0;
+                for (int j = 0; j < taps; j++) {
+                    int k = Math.max(0, Math.min(len - 1, f + j));
+                    sum += fline[k] * fweights[x * taps + j];
+                }
+                fpixels[x] = sum;
+            }
+        }
+        kernels.quantize(fpixels, dst, width, grayscale);
+    }
+}
@@ -24,6 +24,11 @@ package jwx;
  *
  * @author lutusp
  */
+// a decoder state, run over samples from .. to - 1, a run of samples
+// in which only the first can begin a scan line
+//
+// returns the first sample it did not finish: to, or where it
+// switched state, the new state then continues from that sample
 public interface MachineState {
-    boolean exec();
+    int exec(int from, int to);
 }
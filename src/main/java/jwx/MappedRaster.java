@@ -0,0 +1,207 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a ChartRaster whose rows live in a memory-mapped scratch file,
+// for charts loaded from disk, which can be far taller than any
+// chart received in one go
+//
+// the file is the plain raster, row y at y * width, mapped in
+// segments of whole tiles; the OS pages the rows in and out, and
+// only the cached_tiles most recently used tiles are copied to
+// the heap, as the arrays Java2D and the edits work on
+//
+// a cached tile is copied back to the file when it is dropped, but
+// only once edited() says the rows are being changed, so looking
+// through an archived chart never writes to the disk; its arrays
+// are reused for the next tile paged in
+final class MappedRaster extends ChartRaster {
+
+    // tiles held on the heap
+    static final int cached_tiles = 16;
+    // the most bytes mapped by one segment
+    static final int segment_bytes = 1 << 26;
+    final File file;
+    final RandomAccessFile raf;
+    final FileChannel channel;
+    final int tile_size;
+    final int segment_tiles;
+    final List<MappedByteBuffer> segments = new ArrayList<>();
+    boolean write_back = false;
+    // least recently used first
+    final Map<Integer, Tile> cache = new LinkedHashMap<Integer, Tile>(cached_tiles * 2, 0.75f, true) {
+        static final long serialVersionUID = 1;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Tile> e) {
+            if (size() > cached_tiles) {
+                if (write_back) {
+                    view(e.getKey()).put(e.getValue().data);
+                }
+                spare = e.getValue();
+                return true;
+            }
+            return false;
+        }
+    };
+    // the last tile asked for, rows are mostly walked in order
+    int last_index = -1;
+    Tile last;
+    // the tile last dropped from the cache, reused for the next one
+    Tile spare;
+
+    static final class Tile {
+
+        final byte[] data;
+        final BufferedImage image;
+
+        Tile(byte[] t, int w, int h) {
+            data = t;
+            image = image(t, w, h);
+        }
+    }
+
+    MappedRaster(int w, int tr) throws IOException {
+        super(w, tr);
+        tile_size = w * tr;
+        segment_tiles = Math.max(1, segment_bytes / tile_size);
+        file = File.createTempFile("jwx_chart", ".raster");
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    // a mapped raster if the scratch file can be made, else a
+    // raster on the heap
+    static ChartRaster create(int w, int tr) {
+        try {
+            return new MappedRaster(w, tr);
+        } catch (IOException e) {
+            CommonCode.p("mapped raster: " + e);
+            return new ChartRaster(w, tr);
+        }
+    }
+
+    @Override
+    public ChartRaster like(int w) {
+        ChartRaster r = create(w, tile_rows);
+        r.edited();
+        return r;
+    }
+
+    @Override
+    public synchronized void edited() {
+        write_back = true;
+    }
+
+    @Override
+    public synchronized void release() {
+        cache.clear();
+        spare = null;
+        last = null;
+        last_index = -1;
+        try {
+            raf.close();
+        } catch (IOException e) {
+            CommonCode.p("mapped raster: " + e);
+        }
+        // the segments stay valid until collected
+        segments.clear();
+        file.delete();
+    }
+
+    @Override
+    public synchronized byte[] tile(int y) {
+        return get(y / tile_rows).data;
+    }
+
+    @Override
+    public synchronized BufferedImage tile_image(int i) {
+        return get(i).image;
+    }
+
+    @Override
+    public synchronized void reserve(int y) {
+        int i = y / tile_rows;
+        while (i >= segments.size() * segment_tiles) {
+            try {
+                // mapping past the end grows the file
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) segments.size() * segment_tiles * tile_size,
+                        (long) segment_tiles * tile_size));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // rows being loaded go straight to the file
+    @Override
+    public synchronized void set_row(int y, byte[] src, int off) {
+        int i = y / tile_rows;
+        Tile t = cache.get(i);
+        if (t != null) {
+            System.arraycopy(src, off, t.data, offset(y), width);
+        }
+        ByteBuffer v = view(i);
+        v.position(v.position() + offset(y));
+        v.put(src, off, width);
+    }
+
+    private Tile get(int i) {
+        if (i != last_index) {
+            Tile t = cache.get(i);
+            if (t == null) {
+                t = (spare != null) ? spare : new Tile(new byte[tile_size], width, tile_rows);
+                spare = null;
+                view(i).get(t.data);
+                cache.put(i, t);
+            }
+            last = t;
+            last_index = i;
+        }
+        return last;
+    }
+
+    // tile i's bytes in the file
+    private ByteBuffer view(int i) {
+        ByteBuffer v = segments.get(i / segment_tiles).duplicate();
+        int p = (i % segment_tiles) * tile_size;
+        v.position(p);
+        v.limit(p + tile_size);
+        return v;
+    }
+}
@@ -0,0 +1,107 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// numerically controlled oscillator
+//
+// the phase is a 64-bit fixed point fraction of a cycle, so it wraps
+// exactly and never loses precision however long the receiver runs
+//
+// table_bits sets the accuracy/speed tradeoff: 0 uses Math.sin(),
+// otherwise a 2^table_bits sine table, optionally interpolated
+// (peak error ~ 5/4^table_bits interpolated, ~ 3.2/2^table_bits plain)
+final public class NCO {
+
+    static final double two_pi = 2 * Math.PI;
+    // one cycle = 2^64
+    static final double cycle_scale = 0x1p64;
+    static final double phase_scale = 0x1p-64;
+    static final long quarter_cycle = 1L << 62;
+    final int table_bits;
+    final boolean interpolate;
+    final double[] table;
+    final long center_step;
+    final double rad_to_phase;
+    long phase;
+
+    public NCO(double frequency, double sample_rate, int table_bits, boolean interpolate) {
+        this.table_bits = Math.max(0, Math.min(table_bits, 20));
+        this.interpolate = interpolate;
+        center_step = to_phase(frequency / sample_rate);
+        rad_to_phase = 1.0 / two_pi;
+        if (this.table_bits > 0) {
+            int size = 1 << this.table_bits;
+            // one extra entry for the interpolator
+            table = new double[size + 1];
+            for (int i = 0; i <= size; i++) {
+                table[i] = Math.sin(two_pi * i / size);
+            }
+        } else {
+            table = null;
+        }
+        reset();
+    }
+
+    // convert cycles to a fixed point phase increment
+    static long to_phase(double cycles) {
+        cycles -= Math.rint(cycles);
+        return (long) (cycles * cycle_scale);
+    }
+
+    // the first call to next() returns sin(delta_rad)
+    public void reset() {
+        phase = -center_step;
+    }
+
+    // advance one sample plus a phase shift in radians, return the sine;
+    // the shift wraps like any phase, the cast alone would saturate
+    public double next(double delta_rad) {
+        phase += center_step + to_phase(delta_rad * rad_to_phase);
+        return sin(phase);
+    }
+
+    // cosine at the current phase, with next() the pair gives
+    // the in-phase and quadrature references of a mixer
+    public double cos() {
+        return sin(phase + quarter_cycle);
+    }
+
+    double sin(long p) {
+        if (table == null) {
+            return Math.sin((p >>> 11) * 0x1p-53 * two_pi);
+        }
+        if (!interpolate) {
+            // nearest entry
+            return table[(int) (((p >>> (63 - table_bits)) + 1) >>> 1)];
+        }
+        int i = (int) (p >>> (64 - table_bits));
+        double f = ((p << table_bits) >>> 11) * 0x1p-53;
+        double a = table[i];
+        return a + (table[i + 1] - a) * f;
+    }
+
+    // current phase in radians, 0 <= phase < 2 pi
+    public double phase_rad() {
+        return (phase >>> 11) * 0x1p-53 * two_pi;
+    }
+}
@@ -0,0 +1,58 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the demodulator output lowpass, scaled so full deviation is about
+// +/- 1 and clamped to +/- 2, then the optional video lowpass
+final class OutputFilterStage implements BlockStage {
+
+    final double output_gain;
+    final BiQuadraticFilter output_lowpass;
+    final BiQuadraticFilter video_lowpass;
+    boolean video_filter = false;
+
+    OutputFilterStage(long sample_rate, double output_f, double video_f, double output_gain) {
+        final double invsqr2 = 1.0 / Math.sqrt(2);
+        this.output_gain = output_gain;
+        output_lowpass = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, output_f, sample_rate, invsqr2);
+        video_lowpass = new BiQuadraticFilter(BiQuadraticFilter.Type.LOWPASS, video_f, sample_rate, invsqr2);
+    }
+
+    @Override
+    public void process(SampleBlock b) {
+        final double[] wsig = b.wsig;
+        final int len = b.len;
+        output_lowpass.filter(b.demod, wsig, 0, len);
+        for (int i = 0; i < len; i++) {
+            double v = wsig[i] * output_gain;
+            v = Math.min(v, 2.0);
+            wsig[i] = Math.max(v, -2.0);
+        }
+        // low-pass for video
+        if (video_filter) {
+            video_lowpass.filter(wsig, b.sig, 0, len);
+        } else {
+            System.arraycopy(wsig, 0, b.sig, 0, len);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a setting with no control on the form, kept only in the
+// configuration file, e.g. "nco_table_bits = 12" in JWX.ini
+final public class ParameterController implements ControlInterface {
+
+    final String default_value;
+    private String value;
+
+    public ParameterController(String v) {
+        default_value = v;
+        value = v;
+    }
+
+    @Override
+    public void set_value(String s) {
+        value = s.trim();
+    }
+
+    public void reset() {
+        value = default_value;
+    }
+
+    public int get_value() {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(default_value);
+        }
+    }
+
+    public double get_dvalue() {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(default_value);
+        }
+    }
+
+    public boolean is_true() {
+        return value.equals("true");
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
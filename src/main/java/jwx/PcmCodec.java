@@ -0,0 +1,80 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ *
+ * @author mgrouch
+ */
+// converts between raw 16 bit signed PCM bytes and normalized
+// double samples in one pass, no intermediate short buffer
+final class PcmCodec {
+
+    // full scale of a 16 bit sample, a power of two so
+    // scaling is exact and reversible
+    static final double full_scale = 32768.0;
+    static final double inv_full_scale = 1.0 / full_scale;
+
+    // plain 16 bit loads from a byte array in either order
+    private static final VarHandle s16_be = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle s16_le = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private PcmCodec() {
+    }
+
+    // decode frames of interleaved 16 bit samples, taking the sample
+    // at byte offset ch_offset within each frame, into dst[0 .. frames)
+    static void decode(byte[] src, int frames, int frame_size, int ch_offset,
+            boolean big_endian, double[] dst) {
+        decode(src, 0, frames, frame_size, ch_offset, big_endian, dst, 0);
+    }
+
+    // as above, reading from src_off and writing from dst_off
+    static void decode(byte[] src, int src_off, int frames, int frame_size, int ch_offset,
+            boolean big_endian, double[] dst, int dst_off) {
+        // separate loops keep each handle a constant for the compiler
+        int p = src_off + ch_offset;
+        int end = dst_off + frames;
+        if (big_endian) {
+            for (int i = dst_off; i < end; i++, p += frame_size) {
+                dst[i] = (short) s16_be.get(src, p) * inv_full_scale;
+            }
+        } else {
+            for (int i = dst_off; i < end; i++, p += frame_size) {
+                dst[i] = (short) s16_le.get(src, p) * inv_full_scale;
+            }
+        }
+    }
+
+    // encode normalized mono samples as 16 bit PCM with the given gain,
+    // clipping at full scale, returns the byte count
+    static int encode(double[] src, int off, int len, double gain, boolean big_endian, byte[] dst) {
+        double g = gain * full_scale;
+        VarHandle vh = big_endian ? s16_be : s16_le;
+        for (int i = 0; i < len; i++) {
+            double v = src[off + i] * g;
+            vh.set(dst, i * 2, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v)));
+        }
+        return len * 2;
+    }
+}
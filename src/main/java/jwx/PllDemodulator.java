@@ -0,0 +1,76 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the phase locked loop demodulator: the loop control is the input
+// times the reference, and it pulls the reference oscillator onto
+// the carrier, so on average it is the carrier's offset from the
+// center in units of the center frequency
+final class PllDemodulator implements Demodulator {
+
+    final double loop_gain = 1;
+    final double omega;
+    final double sampleinterval;
+    final NCO nco;
+    double integral = 0;
+    double reference = 0;
+    int old_sign = 0;
+
+    PllDemodulator(double center_f, long sample_rate, int table_bits, boolean interpolate) {
+        omega = 2 * Math.PI * center_f;
+        sampleinterval = 1.0 / sample_rate;
+        nco = new NCO(center_f, sample_rate, table_bits, interpolate);
+    }
+
+    @Override
+    public int process(double[] src, int off, int len, double[] dst) {
+        int cycles = 0;
+        for (int i = 0; i < len; i++) {
+            double loop_control = src[off + i] * reference * loop_gain;
+            integral += loop_control * sampleinterval;
+            if (Double.isInfinite(integral)) {
+                integral = 0;
+            }
+            // equivalent to sin(omega * (time_sec + integral))
+            // without the loss of precision as time_sec grows
+            reference = nco.next(omega * loop_control * sampleinterval);
+            dst[i] = loop_control;
+            int sign = (reference > 0) ? 1 : -1;
+            if (sign > old_sign) {
+                cycles++;
+            }
+            old_sign = sign;
+        }
+        return cycles;
+    }
+
+    @Override
+    public double integral() {
+        return integral;
+    }
+
+    @Override
+    public String name() {
+        return "pll";
+    }
+}
@@ -0,0 +1,202 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ *
+ * @author mgrouch
+ */
+// reads a grayscale PNG a row at a time, so a chart is loaded
+// without the whole image ever being decoded into memory
+//
+// only what PngWriter writes is taken, 8 bit gray without
+// interlacing; open() returns null for anything else, which
+// ImageIO reads instead; a file whose zlib stream ends early,
+// such as a chart still being received, gives the rows it has
+final class PngReader implements Closeable {
+
+    final int width;
+    final int height;
+    final DataInputStream in;
+    final Inflater inflater = new Inflater();
+    // a filtered row with its filter byte, and the row above it
+    final byte[] row;
+    final byte[] prior;
+    byte[] chunk = new byte[16384];
+    boolean idat_done = false;
+    int rows = 0;
+
+    private PngReader(DataInputStream s, int w, int h) {
+        in = s;
+        width = w;
+        height = h;
+        row = new byte[w + 1];
+        prior = new byte[w];
+    }
+
+    static PngReader open(File f) throws IOException {
+        DataInputStream s = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            byte[] sig = new byte[PngWriter.signature.length];
+            s.readFully(sig);
+            byte[] ihdr = new byte[13];
+            if (Arrays.equals(sig, PngWriter.signature) && s.readInt() == ihdr.length && s.readInt() == 0x49484452) {
+                s.readFully(ihdr);
+                s.readInt(); // CRC
+                int w = get_int(ihdr, 0);
+                int h = get_int(ihdr, 4);
+                // depth 8, gray, deflate, adaptive filters, not interlaced
+                if (w > 0 && h >= 0 && ihdr[8] == 8 && ihdr[9] == 0 && ihdr[10] == 0 && ihdr[11] == 0 && ihdr[12] == 0) {
+                    return new PngReader(s, w, h);
+                }
+            }
+        } catch (EOFException e) {
+            // not a PNG, let ImageIO say why
+        }
+        s.close();
+        return null;
+    }
+
+    // the next row into dst at off, false when there are no more
+    boolean read_row(byte[] dst, int off) throws IOException {
+        if (rows >= height || !inflate_row()) {
+            return false;
+        }
+        unfilter();
+        System.arraycopy(prior, 0, dst, off, width);
+        rows++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private boolean inflate_row() throws IOException {
+        int n = 0;
+        try {
+            while (n < row.length) {
+                int k = inflater.inflate(row, n, row.length - n);
+                n += k;
+                if (k == 0) {
+                    if (inflater.finished() || inflater.needsDictionary() || !next_idat()) {
+                        return false;
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("png data: " + e.getMessage());
+        }
+        return true;
+    }
+
+    // feed the inflater the next IDAT chunk, false at the end of the
+    // image data or of the file
+    private boolean next_idat() throws IOException {
+        try {
+            while (!idat_done) {
+                int len = in.readInt();
+                int type = in.readInt();
+                if (type == 0x49444154) { // IDAT
+                    if (len > chunk.length) {
+                        chunk = new byte[len];
+                    }
+                    int n = 0;
+                    while (n < len) {
+                        int k = in.read(chunk, n, len - n);
+                        if (k < 0) {
+                            break;
+                        }
+                        n += k;
+                    }
+                    if (n < len) {
+                        // a cut off file, take what is there
+                        idat_done = true;
+                    } else {
+                        in.readInt(); // CRC
+                    }
+                    if (n > 0) {
+                        inflater.setInput(chunk, 0, n);
+                        return true;
+                    }
+                } else if (type == 0x49454e44) { // IEND
+                    idat_done = true;
+                } else {
+                    in.skipBytes(len + 4);
+                }
+            }
+        } catch (EOFException e) {
+            idat_done = true;
+        }
+        return false;
+    }
+
+    // undo the row's filter into prior, which then holds the row;
+    // a, b and c are the left, upper and upper left neighbors
+    private void unfilter() throws IOException {
+        int type = row[0];
+        int a = 0, c = 0;
+        for (int i = 0; i < width; i++) {
+            int b = prior[i] & 0xff;
+            int x = row[i + 1] & 0xff;
+            switch (type) {
+                case 0:
+                    break;
+                case 1:
+                    x += a;
+                    break;
+                case 2:
+                    x += b;
+                    break;
+                case 3:
+                    x += (a + b) >> 1;
+                    break;
+                case 4:
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    x += (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+                    break;
+                default:
+                    throw new IOException("png filter type " + type);
+            }
+            x &= 0xff;
+            prior[i] = (byte) x;
+            a = x;
+            c = b;
+        }
+    }
+
+    private static int get_int(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+}
@@ -0,0 +1,266 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a grayscale PNG written a row at a time while a chart is received
+//
+// rows are filtered and deflated as they arrive; flush() writes what
+// the deflater holds as an IDAT chunk, ends the file with IEND and
+// sets the IHDR height to the rows written, so between flushes the
+// file is a readable image of the chart so far (the zlib stream is
+// only terminated by close(), decoders read the rows without it);
+// the next flush writes its IDAT over that IEND
+//
+// each row takes the PNG filter with the smallest sum of absolute
+// differences, the usual heuristic
+final class PngWriter {
+
+    static final byte[] signature = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    // where the IHDR height field is
+    static final int height_pos = signature.length + 8 + 4;
+    final int width;
+    final RandomAccessFile file;
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    final CRC32 crc = new CRC32();
+    // the previous row, unfiltered, and a filtered row for each filter
+    final byte[] prior;
+    final byte[][] filtered = new byte[5][];
+    byte[] pending = new byte[65536];
+    int pending_len = 0;
+    final byte[] buf = new byte[16384];
+    // where the next chunk goes, over the IEND of the last flush
+    long chunk_pos;
+    int rows = 0;
+
+    PngWriter(File f, int w) throws IOException {
+        width = w;
+        prior = new byte[w];
+        for (int i = 0; i < filtered.length; i++) {
+            filtered[i] = new byte[w + 1];
+            filtered[i][0] = (byte) i;
+        }
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(0);
+        file.write(signature);
+        byte[] ihdr = new byte[13];
+        put_int(ihdr, 0, width);
+        put_int(ihdr, 4, 0);
+        ihdr[8] = 8; // bit depth
+        ihdr[9] = 0; // grayscale
+        write_chunk("IHDR", ihdr, ihdr.length);
+        chunk_pos = file.getFilePointer();
+    }
+
+    // write rows 0 .. h - 1 of a raster as a complete file
+    static void write(File f, ChartRaster raster, int h) throws IOException {
+        PngWriter png = new PngWriter(f, raster.width);
+        try {
+            for (int y = 0; y < h; y++) {
+                png.add_row(raster.tile(y), raster.offset(y));
+            }
+        } finally {
+            png.close();
+        }
+    }
+
+    // write a gray image as a complete file
+    static void write(File f, BufferedImage bi) throws IOException {
+        byte[] data = ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
+        int w = bi.getWidth();
+        PngWriter png = new PngWriter(f, w);
+        try {
+            for (int y = 0; y < bi.getHeight(); y++) {
+                png.add_row(data, y * w);
+            }
+        } finally {
+            png.close();
+        }
+    }
+
+    void add_row(byte[] src, int off) throws IOException {
+        byte[] row = filter_row(src, off);
+        System.arraycopy(src, off, prior, 0, width);
+        deflater.setInput(row, 0, row.length);
+        drain(Deflater.NO_FLUSH);
+        rows++;
+    }
+
+    // make the rows so far readable on disk
+    void flush() throws IOException {
+        drain(Deflater.SYNC_FLUSH);
+        write_idat();
+        write_end();
+    }
+
+    // terminate the zlib stream and the file, the writer is done
+    void close() throws IOException {
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                pend(deflater.deflate(buf));
+            }
+            write_idat();
+            write_end();
+            file.setLength(chunk_pos + 12);
+        } finally {
+            deflater.end();
+            file.close();
+        }
+    }
+
+    // stop writing, the file keeps the rows of the last flush
+    void abandon() {
+        deflater.end();
+        try {
+            file.close();
+        } catch (IOException e) {
+            CommonCode.p("png abandon: " + e);
+        }
+    }
+
+    private void drain(int mode) {
+        if (mode == Deflater.NO_FLUSH) {
+            while (!deflater.needsInput()) {
+                pend(deflater.deflate(buf, 0, buf.length, mode));
+            }
+            return;
+        }
+        // a sync flush is complete when it leaves room in the buffer
+        int n;
+        do {
+            n = deflater.deflate(buf, 0, buf.length, mode);
+            pend(n);
+        } while (n == buf.length);
+    }
+
+    private void pend(int n) {
+        if (pending_len + n > pending.length) {
+            pending = java.util.Arrays.copyOf(pending, Math.max(pending.length * 2, pending_len + n));
+        }
+        System.arraycopy(buf, 0, pending, pending_len, n);
+        pending_len += n;
+    }
+
+    private void write_idat() throws IOException {
+        file.seek(chunk_pos);
+        if (pending_len > 0) {
+            write_chunk("IDAT", pending, pending_len);
+            pending_len = 0;
+        }
+        chunk_pos = file.getFilePointer();
+    }
+
+    private void write_end() throws IOException {
+        write_chunk("IEND", pending, 0);
+        // the height and the CRC after the 13 IHDR bytes
+        byte[] ihdr = new byte[4 + 13];
+        file.seek(signature.length + 4);
+        file.readFully(ihdr);
+        put_int(ihdr, 8, rows);
+        crc.reset();
+        crc.update(ihdr, 0, ihdr.length);
+        byte[] b = new byte[8];
+        put_int(b, 0, rows);
+        put_int(b, 4, (int) crc.getValue());
+        file.seek(height_pos);
+        file.write(b, 0, 4);
+        file.seek(height_pos + 4 + 5);
+        file.write(b, 4, 4);
+    }
+
+    private void write_chunk(String type, byte[] data, int len) throws IOException {
+        byte[] c = new byte[len + 12];
+        put_int(c, 0, len);
+        for (int i = 0; i < 4; i++) {
+            c[4 + i] = (byte) type.charAt(i);
+        }
+        System.arraycopy(data, 0, c, 8, len);
+        crc.reset();
+        crc.update(c, 4, len + 4);
+        put_int(c, len + 8, (int) crc.getValue());
+        file.write(c);
+    }
+
+    private static void put_int(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    // filter types 0 none, 1 sub, 2 up, 3 average, 4 Paeth, a, b
+    // and c are the left, upper and upper left neighbors
+    private byte[] filter_row(byte[] src, int off) {
+        byte[] f0 = filtered[0], f1 = filtered[1], f2 = filtered[2], f3 = filtered[3], f4 = filtered[4];
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        int a = 0, c = 0;
+        for (int i = 0; i < width; i++) {
+            int x = src[off + i] & 0xff;
+            int b = prior[i] & 0xff;
+            int p = a + b - c;
+            int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+            int pred = (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+            byte v0 = (byte) x, v1 = (byte) (x - a), v2 = (byte) (x - b);
+            byte v3 = (byte) (x - ((a + b) >> 1)), v4 = (byte) (x - pred);
+            f0[i + 1] = v0;
+            f1[i + 1] = v1;
+            f2[i + 1] = v2;
+            f3[i + 1] = v3;
+            f4[i + 1] = v4;
+            // filtered bytes are taken as signed for the sums
+            s0 += Math.abs(v0);
+            s1 += Math.abs(v1);
+            s2 += Math.abs(v2);
+            s3 += Math.abs(v3);
+            s4 += Math.abs(v4);
+            a = x;
+            c = b;
+        }
+        byte[] best = f0;
+        long min = s0;
+        if (s1 < min) {
+            min = s1;
+            best = f1;
+        }
+        if (s2 < min) {
+            min = s2;
+            best = f2;
+        }
+        if (s3 < min) {
+            min = s3;
+            best = f3;
+        }
+        if (s4 < min) {
+            best = f4;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,131 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the quadrature demodulator: the input is mixed with the center
+// frequency into I and Q, both are lowpassed to remove the mixer
+// products at twice the center, and the frequency is the phase
+// step between successive I/Q samples, arg(z[n] * conj(z[n - 1]))
+//
+// the phase step is exact for any amplitude, there is no loop to
+// settle, and the mixer and lowpass passes run over whole blocks
+final class QuadratureDemodulator implements Demodulator {
+
+    // keeps the 400 Hz deviation plus the 650 Hz video bandwidth
+    // DecodeFax passes on, and takes the mixer products at 2 * 1900
+    // Hz less the same down by 30 dB or more
+    final double lowpass_f = 1100;
+    final int lowpass_order = 4;
+    final double sampleinterval;
+    // radians per sample to units of the center frequency
+    final double scale;
+    // center frequency in cycles per sample
+    final double center_cycles;
+    final NCO nco;
+    final BiQuadraticCascade lowpass_i, lowpass_q;
+    double[] i_block, q_block;
+    double last_i, last_q;
+    double integral = 0;
+    double meter_phase = 0;
+
+    QuadratureDemodulator(double center_f, long sample_rate, int table_bits, boolean interpolate) {
+        sampleinterval = 1.0 / sample_rate;
+        scale = sample_rate / (2 * Math.PI * center_f);
+        center_cycles = center_f / sample_rate;
+        nco = new NCO(center_f, sample_rate, table_bits, interpolate);
+        lowpass_i = BiQuadraticCascade.butterworth_lowpass(lowpass_order, lowpass_f, sample_rate);
+        lowpass_q = BiQuadraticCascade.butterworth_lowpass(lowpass_order, lowpass_f, sample_rate);
+    }
+
+    @Override
+    public int process(double[] src, int off, int len, double[] dst) {
+        if (i_block == null || i_block.length < len) {
+            i_block = new double[len];
+            q_block = new double[len];
+        }
+        final double[] ib = i_block, qb = q_block;
+        // multiply by exp(-j omega t)
+        for (int i = 0; i < len; i++) {
+            double x = src[off + i];
+            double s = nco.next(0);
+            ib[i] = x * nco.cos();
+            qb[i] = -x * s;
+        }
+        lowpass_i.filter(ib, ib, 0, len);
+        lowpass_q.filter(qb, qb, 0, len);
+        double li = last_i, lq = last_q;
+        double sum = 0, mp = meter_phase;
+        int cycles = 0;
+        for (int i = 0; i < len; i++) {
+            double vi = ib[i], vq = qb[i];
+            double d = atan2(vq * li - vi * lq, vi * li + vq * lq) * scale;
+            dst[i] = d;
+            li = vi;
+            lq = vq;
+            sum += d;
+            // the output is at most half the sample rate, so a cycle
+            // completes at most once per sample
+            mp += (1 + d) * center_cycles;
+            if (mp >= 1) {
+                mp -= 1;
+                cycles++;
+            }
+        }
+        last_i = li;
+        last_q = lq;
+        meter_phase = mp;
+        integral += sum * sampleinterval;
+        return cycles;
+    }
+
+    // Abramowitz and Stegun 4.4.49 on the smaller of y / x and x / y,
+    // error about 1e-5 radian, 0.01 Hz at 8 kHz, and several
+    // times faster than Math.atan2()
+    static double atan2(double y, double x) {
+        double ax = Math.abs(x), ay = Math.abs(y);
+        double hi = Math.max(ax, ay);
+        if (hi == 0) {
+            return 0;
+        }
+        double t = Math.min(ax, ay) / hi;
+        double s = t * t;
+        double r = t * (0.9998660 + s * (-0.3302995 + s * (0.1801410 + s * (-0.0851330 + s * 0.0208351))));
+        if (ay > ax) {
+            r = 0.5 * Math.PI - r;
+        }
+        if (x < 0) {
+            r = Math.PI - r;
+        }
+        return (y < 0) ? -r : r;
+    }
+
+    @Override
+    public double integral() {
+        return integral;
+    }
+
+    @Override
+    public String name() {
+        return "quadrature";
+    }
+}
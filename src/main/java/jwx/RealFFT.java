@@ -0,0 +1,157 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// in-place radix-2 FFT of real samples: the n samples are treated as
+// n/2 complex values, transformed, then split into the spectrum of
+// the real sequence, so it costs about half a complex FFT of size n
+//
+// all tables are built by the constructor, transform() allocates
+// nothing; one instance per thread, it has no other state
+final class RealFFT {
+
+    final int n;
+    // complex size
+    final int m;
+    // bit reversal swap pairs for the complex pass
+    final int[] swap_a, swap_b;
+    // complex pass twiddles exp(-2 pi i j / m), j < m/2
+    final double[] tw_re, tw_im;
+    // split twiddles exp(-2 pi i k / n), k <= m/2
+    final double[] sp_re, sp_im;
+
+    public RealFFT(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        n = size;
+        m = n / 2;
+        int bits = Integer.numberOfTrailingZeros(m);
+        int pairs = 0;
+        int[] a = new int[m];
+        int[] b = new int[m];
+        for (int i = 0; i < m; i++) {
+            int r = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+            if (r > i) {
+                a[pairs] = i;
+                b[pairs] = r;
+                pairs++;
+            }
+        }
+        swap_a = java.util.Arrays.copyOf(a, pairs);
+        swap_b = java.util.Arrays.copyOf(b, pairs);
+        tw_re = new double[Math.max(1, m / 2)];
+        tw_im = new double[tw_re.length];
+        for (int j = 0; j < tw_re.length; j++) {
+            double w = 2 * Math.PI * j / m;
+            tw_re[j] = Math.cos(w);
+            tw_im[j] = -Math.sin(w);
+        }
+        sp_re = new double[m / 2 + 1];
+        sp_im = new double[m / 2 + 1];
+        for (int k = 0; k <= m / 2; k++) {
+            double w = 2 * Math.PI * k / n;
+            sp_re[k] = Math.cos(w);
+            sp_im[k] = -Math.sin(w);
+        }
+    }
+
+    // a Hann window of the transform size
+    public double[] hann() {
+        double[] w = new double[n];
+        for (int i = 0; i < n; i++) {
+            w[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / n);
+        }
+        return w;
+    }
+
+    // transform x[0 .. n) in place, the result is packed as
+    // x[0] = X[0], x[1] = X[n/2] (both real), and x[2k], x[2k+1]
+    // = real, imaginary parts of X[k] for 0 < k < n/2
+    public void transform(double[] x) {
+        complex_fft(x);
+        // X[0] and X[n/2] from the DC term
+        double r0 = x[0], i0 = x[1];
+        x[0] = r0 + i0;
+        x[1] = r0 - i0;
+        for (int k = 1; k <= m / 2; k++) {
+            int p = 2 * k;
+            int q = 2 * (m - k);
+            double ar = x[p], ai = x[p + 1];
+            double br = x[q], bi = x[q + 1];
+            // even and odd sample spectra
+            double er = 0.5 * (ar + br);
+            double ei = 0.5 * (ai - bi);
+            double or = 0.5 * (ai + bi);
+            double oi = -0.5 * (ar - br);
+            double wr = sp_re[k], wi = sp_im[k];
+            double tr = wr * or - wi * oi;
+            double ti = wr * oi + wi * or;
+            // X[k] = E + W O, X[m-k] = conj(E - W O)
+            x[p] = er + tr;
+            x[p + 1] = ei + ti;
+            x[q] = er - tr;
+            x[q + 1] = -(ei - ti);
+        }
+    }
+
+    // squared magnitudes of a transform() result, p[0 .. n/2]
+    public void power(double[] x, double[] p) {
+        p[0] = x[0] * x[0];
+        p[m] = x[1] * x[1];
+        for (int k = 1; k < m; k++) {
+            double re = x[2 * k], im = x[2 * k + 1];
+            p[k] = re * re + im * im;
+        }
+    }
+
+    // iterative decimation in time on m interleaved complex values
+    private void complex_fft(double[] x) {
+        for (int s = 0; s < swap_a.length; s++) {
+            int i = 2 * swap_a[s], j = 2 * swap_b[s];
+            double t = x[i];
+            x[i] = x[j];
+            x[j] = t;
+            t = x[i + 1];
+            x[i + 1] = x[j + 1];
+            x[j + 1] = t;
+        }
+        for (int len = 2; len <= m; len <<= 1) {
+            int half = len >> 1;
+            int step = m / len;
+            for (int start = 0; start < m; start += len) {
+                for (int j = 0; j < half; j++) {
+                    double wr = tw_re[j * step], wi = tw_im[j * step];
+                    int a = 2 * (start + j);
+                    int b = a + 2 * half;
+                    double br = x[b] * wr - x[b + 1] * wi;
+                    double bi = x[b] * wi + x[b + 1] * wr;
+                    x[b] = x[a] - br;
+                    x[b + 1] = x[a + 1] - bi;
+                    x[a] += br;
+                    x[a + 1] += bi;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// the work arrays a block of samples passes through the decoder
+// stages in, kept from block to block and grown as needed
+final class SampleBlock {
+
+    // the input, in[off] .. in[off + len - 1], not owned
+    double[] in;
+    int off;
+    int len;
+    // AGC level, per sample
+    double[] gain;
+    // normalized input, then the demodulator output in place
+    double[] demod;
+    // filtered, scaled and clamped demodulator output, the tone
+    // detectors and phasing work on it
+    double[] wsig;
+    // wsig through the video filter when it is on, the image
+    double[] sig;
+    // carrier cycles the demodulator counted in the block
+    int cycles;
+
+    void set(double[] in, int off, int len) {
+        if (gain == null || gain.length < len) {
+            gain = new double[len];
+            demod = new double[len];
+            wsig = new double[len];
+            sig = new double[len];
+        }
+        this.in = in;
+        this.off = off;
+        this.len = len;
+    }
+}
@@ -0,0 +1,180 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * @author mgrouch
+ */
+// single producer, single consumer ring of normalized samples from
+// the capture thread to the decoder thread; neither side locks or
+// blocks the other, the producer drops a block it has no room for
+// and counts an overrun, the consumer parks when empty
+final class SampleRing {
+
+    final double[] buffer;
+    final int mask;
+    // positions only ever increase, index = pos & mask
+    private volatile long write_pos = 0;
+    private volatile long read_pos = 0;
+    // producer-side statistics
+    private volatile long overruns = 0;
+    private volatile long overrun_samples = 0;
+    private volatile int high_water = 0;
+    private volatile Thread consumer = null;
+
+    // capacity is rounded up to a power of two
+    public SampleRing(int min_capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, min_capacity - 1)) << 1;
+        buffer = new double[cap];
+        mask = cap - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    // producer side
+
+    // decode a block of 16 bit PCM bytes straight into the ring,
+    // returns false and counts an overrun if there is no room for it
+    public boolean write_pcm(byte[] src, int frames, int frame_size, int ch_offset, boolean big_endian) {
+        long w = write_pos;
+        int fill = (int) (w - read_pos);
+        if (frames > buffer.length - fill) {
+            overruns++;
+            overrun_samples += frames;
+            return false;
+        }
+        int idx = (int) (w & mask);
+        int first = Math.min(frames, buffer.length - idx);
+        PcmCodec.decode(src, 0, first, frame_size, ch_offset, big_endian, buffer, idx);
+        if (first < frames) {
+            PcmCodec.decode(src, first * frame_size, frames - first, frame_size, ch_offset, big_endian, buffer, 0);
+        }
+        publish(w + frames, fill + frames);
+        return true;
+    }
+
+    // copy samples into the ring, same rules as write_pcm()
+    public boolean write(double[] src, int off, int len) {
+        long w = write_pos;
+        int fill = (int) (w - read_pos);
+        if (len > buffer.length - fill) {
+            overruns++;
+            overrun_samples += len;
+            return false;
+        }
+        int idx = (int) (w & mask);
+        int first = Math.min(len, buffer.length - idx);
+        System.arraycopy(src, off, buffer, idx, first);
+        System.arraycopy(src, off + first, buffer, 0, len - first);
+        publish(w + len, fill + len);
+        return true;
+    }
+
+    // pass the last len samples written on to another ring, e.g. a
+    // monitor that may drop them, producer thread only
+    public boolean copy_recent(int len, SampleRing dst) {
+        int idx = (int) ((write_pos - len) & mask);
+        int first = Math.min(len, buffer.length - idx);
+        if (first == len) {
+            return dst.write(buffer, idx, len);
+        }
+        return dst.write(buffer, idx, first) && dst.write(buffer, 0, len - first);
+    }
+
+    private void publish(long w, int fill) {
+        // the volatile write makes the samples visible to the consumer
+        write_pos = w;
+        if (fill > high_water) {
+            high_water = fill;
+        }
+        Thread t = consumer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    // consumer side
+
+    public int available() {
+        return (int) (write_pos - read_pos);
+    }
+
+    // index in buffer of the oldest unread sample
+    public int read_index() {
+        return (int) (read_pos & mask);
+    }
+
+    // samples readable from read_index() without wrapping
+    public int contiguous() {
+        return Math.min(available(), buffer.length - read_index());
+    }
+
+    public void consume(int n) {
+        read_pos += n;
+    }
+
+    // wait up to timeout_ns for data, returns the available count
+    public int await(long timeout_ns) {
+        int n = available();
+        if (n == 0) {
+            consumer = Thread.currentThread();
+            n = available();
+            if (n == 0) {
+                LockSupport.parkNanos(this, timeout_ns);
+                n = available();
+            }
+            consumer = null;
+        }
+        return n;
+    }
+
+    // copy len samples out and consume them, len <= available()
+    public void read(double[] dst, int off, int len) {
+        int idx = read_index();
+        int first = Math.min(len, buffer.length - idx);
+        System.arraycopy(buffer, idx, dst, off, first);
+        System.arraycopy(buffer, 0, dst, off + first, len - first);
+        consume(len);
+    }
+
+    public void clear() {
+        read_pos = write_pos;
+    }
+
+    // statistics
+
+    // blocks dropped because the consumer fell behind
+    public long overruns() {
+        return overruns;
+    }
+
+    public long overrun_samples() {
+        return overrun_samples;
+    }
+
+    // the largest fill level seen, in samples
+    public int high_water() {
+        return high_water;
+    }
+}
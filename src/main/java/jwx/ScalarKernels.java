@@ -0,0 +1,71 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// DspKernels in plain Java, the fallback when the vector API is absent
+final class ScalarKernels implements DspKernels {
+
+    @Override
+    public float dot(float[] a, int ao, float[] b, int bo, int n) {
+        float sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += a[ao + i] * b[bo + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void quantize(float[] src, byte[] dst, int len, boolean grayscale) {
+        quantize(src, dst, 0, len, grayscale);
+    }
+
+    // quantize src[from .. to) to dst[from .. to)
+    static void quantize(float[] src, byte[] dst, int from, int to, boolean grayscale) {
+        for (int i = from; i < to; i++) {
+            float v = (src[i] + 1.0f) * 0.5f;
+            v = Math.max(0.0f, Math.min(1.0f, v));
+            if (grayscale) {
+                dst[i] = (byte) (v * 255.0f);
+            } else {
+                dst[i] = (byte) ((v > 0.5f) ? 255 : 0);
+            }
+        }
+    }
+
+    @Override
+    public void to_float(double[] src, int off, float[] dst, int dst_off, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dst_off + i] = (float) src[off + i];
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public boolean vectorized() {
+        return false;
+    }
+}
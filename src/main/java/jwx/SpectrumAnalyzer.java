@@ -0,0 +1,123 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * @author mgrouch
+ */
+// spectrum of the capture stream for the SpectrumPanel; the capture
+// thread copies each block into a small ring of its own, sampled
+// here at most frames_per_second times a second, so the transform
+// never runs on or waits for the decoder
+final class SpectrumAnalyzer extends Thread {
+
+    final SpectrumPanel panel;
+    final SampleRing ring;
+    final RealFFT fft;
+    final double[] window;
+    final double[] work;
+    final double[] power;
+    final double[] db;
+    final long frame_ns;
+    // scales power so a full scale sine reads 0 dB
+    final double norm;
+    // whether the capture thread need feed the ring at all
+    volatile boolean active = false;
+    volatile boolean running = true;
+
+    public SpectrumAnalyzer(SpectrumPanel p, double rate, double frames_per_second) {
+        panel = p;
+        // about 4 to 8 Hz per bin at any rate
+        int n = Integer.highestOneBit((int) Math.max(64, rate / 4));
+        fft = new RealFFT(n);
+        window = fft.hann();
+        work = new double[n];
+        power = new double[n / 2 + 1];
+        db = new double[n / 2 + 1];
+        ring = new SampleRing(n * 4);
+        frame_ns = (long) (1e9 / Math.max(1, frames_per_second));
+        double sum = 0;
+        for (double w : window) {
+            sum += w;
+        }
+        norm = 4 / (sum * sum);
+        panel.configure(rate, n);
+        setName("jwx-spectrum");
+        setDaemon(true);
+    }
+
+    // capture thread: pass on the block just written to the capture ring
+    public void feed(SampleRing src, int len) {
+        if (active) {
+            src.copy_recent(Math.min(len, ring.capacity()), ring);
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(this);
+        join();
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        while (running) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            next += frame_ns;
+            active = panel.isShowing();
+            if (!active) {
+                ring.clear();
+                continue;
+            }
+            if (frame() != null) {
+                panel.add_row(db);
+            }
+        }
+    }
+
+    // the spectrum in dB of the newest samples, null if there
+    // aren't enough yet
+    double[] frame() {
+        int n = work.length;
+        int avail = ring.available();
+        if (avail < n) {
+            return null;
+        }
+        // only the newest n samples matter
+        ring.consume(avail - n);
+        ring.read(work, 0, n);
+        for (int i = 0; i < n; i++) {
+            work[i] *= window[i];
+        }
+        fft.transform(work);
+        fft.power(work, power);
+        for (int k = 0; k < power.length; k++) {
+            db[k] = 10 * Math.log10(power[k] * norm + 1e-20);
+        }
+        return db;
+    }
+}
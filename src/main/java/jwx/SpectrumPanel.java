@@ -0,0 +1,146 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ *
+ * @author mgrouch
+ */
+// live spectrum of the fax band over a scrolling waterfall, fed by
+// SpectrumAnalyzer from its own thread; a row goes straight into
+// the waterfall image, the event thread only draws it
+final public class SpectrumPanel extends JPanel {
+
+    static final long serialVersionUID = 31207;
+    // frequency range shown
+    final double f_lo = 1000, f_hi = 2800;
+    // black, center and white frequencies marked on the display
+    final double[] marks = {1500, 1900, 2300};
+    // dB range mapped onto the palette
+    final double db_floor = -100, db_ceiling = -10;
+    final int waterfall_rows = 256;
+    // spectrum trace height, fraction of the panel
+    final double trace_fraction = 0.3;
+    final int[] palette = new int[256];
+    final Color background = new Color(0x10, 0x10, 0x20);
+    final Color mark_color = new Color(0xff, 0x60, 0x60);
+    final Color trace_color = new Color(0x80, 0xff, 0x80);
+    BufferedImage waterfall = null;
+    int[] pixels;
+    // newest waterfall row
+    int top = 0;
+    double[] trace;
+    volatile int first_bin, bin_count;
+    volatile double bin_hz = 1;
+
+    public SpectrumPanel() {
+        setBackground(background);
+        for (int i = 0; i < 256; i++) {
+            palette[i] = heat(i / 255.0);
+        }
+    }
+
+    // black to blue to yellow to white
+    private static int heat(double v) {
+        double r = Math.min(1, Math.max(0, 2 * v - 0.6));
+        double g = Math.min(1, Math.max(0, 2 * v - 0.8) + Math.max(0, v - 0.9) * 2);
+        double b = Math.min(1, Math.max(0, 3 * v) - Math.max(0, 3 * v - 1.8));
+        return ((int) (r * 255) << 16) | ((int) (g * 255) << 8) | (int) (b * 255);
+    }
+
+    // set up for a transform of n samples at the given rate, called
+    // from the analyzer thread before the first row
+    public synchronized void configure(double rate, int n) {
+        double hz = rate / n;
+        int lo = Math.max(0, (int) Math.floor(f_lo / hz));
+        int hi = Math.min(n / 2, (int) Math.ceil(f_hi / hz));
+        int count = Math.max(1, hi - lo + 1);
+        if (waterfall == null || waterfall.getWidth() != count) {
+            waterfall = new BufferedImage(count, waterfall_rows, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) waterfall.getRaster().getDataBuffer()).getData();
+            trace = new double[count];
+            top = 0;
+        }
+        bin_hz = hz;
+        first_bin = lo;
+        bin_count = count;
+    }
+
+    // add one spectrum in dB, bins first_bin .. first_bin + bin_count
+    public synchronized void add_row(double[] db) {
+        if (waterfall == null) {
+            return;
+        }
+        int w = bin_count;
+        top = (top == 0) ? waterfall_rows - 1 : top - 1;
+        int p = top * w;
+        double scale = 255.0 / (db_ceiling - db_floor);
+        for (int i = 0; i < w; i++) {
+            double v = db[first_bin + i];
+            trace[i] = v;
+            int c = (int) ((v - db_floor) * scale);
+            pixels[p + i] = palette[Math.max(0, Math.min(255, c))];
+        }
+        repaint();
+    }
+
+    @Override
+    protected synchronized void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (waterfall == null) {
+            return;
+        }
+        int pw = getWidth(), ph = getHeight();
+        int th = (int) (ph * trace_fraction);
+        int wh = ph - th;
+        int w = bin_count;
+        // the waterfall, newest row at the top, in two parts
+        int n1 = waterfall_rows - top;
+        int y1 = wh * n1 / waterfall_rows;
+        g.drawImage(waterfall, 0, th, pw, th + y1, 0, top, w, waterfall_rows, null);
+        g.drawImage(waterfall, 0, th + y1, pw, ph, 0, 0, w, top, null);
+        // the latest spectrum
+        g.setColor(trace_color);
+        double ys = th / (db_ceiling - db_floor);
+        int ox = 0, oy = th;
+        for (int i = 0; i < w; i++) {
+            int x = (int) ((i + 0.5) * pw / w);
+            int y = (int) ((db_ceiling - Math.max(db_floor, Math.min(db_ceiling, trace[i]))) * ys);
+            if (i > 0) {
+                g.drawLine(ox, oy, x, y);
+            }
+            ox = x;
+            oy = y;
+        }
+        // band markers
+        g.setColor(mark_color);
+        double f0 = first_bin * bin_hz;
+        double fspan = w * bin_hz;
+        for (double f : marks) {
+            int x = (int) ((f - f0 + bin_hz / 2) / fspan * pw);
+            g.drawLine(x, 0, x, th);
+            g.drawString(String.format("%.0f", f), x + 3, 12);
+        }
+    }
+}
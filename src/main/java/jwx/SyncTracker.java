@@ -0,0 +1,488 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// line alignment from the received signal
+//
+// during the phasing period every line is added into a circular
+// accumulator at an index offset that follows the clock calibration,
+// so no line is ever shifted or copied, then the phasing pulse is
+// located in the sum; the lines are also summed in groups, and the
+// movement of the pulse from group to group measures what is left
+// of the sound card clock error
+//
+// while the image is received the lines are accumulated the same way,
+// and every track_lines lines the sum is binned to pixel resolution
+// and cross-correlated with a reference profile over a small lag
+// range; a clear displacement becomes a slew-limited correction of
+// the line start, and the displacements against the first window
+// give a second, longer term estimate of the clock error
+final class SyncTracker {
+
+    int row_len;
+    // clock slip in samples per line from the calibration value
+    double cal_step;
+    // lines accumulated and the index offset of the current line
+    int line;
+    int shift;
+    double[] acc;
+    double[] work;
+    // phasing groups
+    final int group_lines = 8;
+    double[][] groups;
+    double[] group;
+    // image tracking
+    final int track_lines = 16;
+    // the largest displacement searched for, fraction of a line
+    final double max_lag_fraction = 0.01;
+    // the largest correction applied at once, fraction of a line
+    final double max_step_fraction = 0.002;
+    // normalized correlation required to trust a displacement
+    final double min_correlation = 0.6;
+    // reference profile update time constant, per window
+    final double reference_tc = 0.25;
+    // clock error fits need this many points, and a fit with an rms
+    // residual over max_fit_rms bins is not trusted
+    final int min_fit_points = 3;
+    final int min_track_windows = 6;
+    final double max_fit_rms = 1.0;
+    int bins;
+    int max_lag;
+    int max_step;
+    double[] profile;
+    double[] reference;
+    // profile bin of each line position
+    int[] bin_of;
+    // 1 / the number of samples in each bin, they differ by one
+    // when the line doesn't divide evenly and the sums would show it
+    double[] bin_scale;
+    boolean have_reference;
+    // whether corrections are applied, or only measured
+    boolean correcting;
+    int window_lines;
+    // the last measured displacement in samples, for display
+    double last_lag;
+    double last_correlation;
+    // the displacement of the previous window in bins
+    double prev_lag;
+    // corrections applied so far, and a least squares fit of the
+    // total displacement in samples against the line number
+    long applied;
+    // windows compared with the reference and their correlations,
+    // the measure of the chart's quality
+    int track_windows;
+    double correlation_sum;
+    int fit_n;
+    double fit_x, fit_y, fit_xx, fit_xy, fit_yy;
+
+    private void size(int len, double step, int nbins) {
+        row_len = len;
+        cal_step = step;
+        bins = nbins;
+        if (acc == null || acc.length != len) {
+            acc = new double[len];
+            work = new double[len];
+            groups = null;
+        } else {
+            java.util.Arrays.fill(acc, 0.0);
+        }
+        if (profile == null || profile.length != nbins) {
+            profile = new double[nbins];
+            reference = new double[nbins];
+            bin_of = null;
+        }
+        if (bin_of == null || bin_of.length != len) {
+            bin_of = new int[len];
+            bin_scale = new double[nbins];
+            for (int k = 0; k < len; k++) {
+                bin_of[k] = (int) ((long) k * nbins / len);
+                bin_scale[bin_of[k]]++;
+            }
+            for (int b = 0; b < nbins; b++) {
+                bin_scale[b] = 1.0 / bin_scale[b];
+            }
+        }
+        max_lag = Math.max(1, (int) (nbins * max_lag_fraction));
+        max_step = Math.max(1, (int) (row_len * max_step_fraction));
+        last_lag = 0;
+        last_correlation = 0;
+    }
+
+    // begin accumulating phasing lines, sync_lines of them
+    public void start_sync(int len, double step, int nbins, int sync_lines) {
+        size(len, step, nbins);
+        int n = Math.max(1, sync_lines / group_lines);
+        if (groups == null || groups.length != n) {
+            groups = new double[n][len];
+        } else {
+            for (double[] g : groups) {
+                java.util.Arrays.fill(g, 0.0);
+            }
+        }
+        // the offset of the first line is that of line 1, as it
+        // always has been
+        line = 1;
+        shift = offset(line);
+        group = groups[0];
+    }
+
+    private int offset(int n) {
+        int p = (int) (cal_step * n);
+        return (row_len * 32 + p) % row_len;
+    }
+
+    // add the sample at position j of the current line
+    public void add_sync(int j, double v) {
+        int k = j - shift;
+        if (k < 0) {
+            k += row_len;
+        }
+        // a line of a fractional length may be a sample longer
+        if (k < row_len) {
+            acc[k] += v;
+            group[k] += v;
+        }
+    }
+
+    // add_sync() for v[off] .. v[off + n - 1] at j .. j + n - 1
+    public void add_sync(int j, double[] v, int off, int n) {
+        for (int i = 0; i < n; i++) {
+            add_sync(j + i, v[off + i]);
+        }
+    }
+
+    public void end_sync_line() {
+        line++;
+        shift = offset(line);
+        // lines past the last full group go into the last group
+        group = groups[Math.min((line - 1) / group_lines, groups.length - 1)];
+    }
+
+    // integrate the accumulated lines with time constant tc and
+    // return the position of the largest negative excursion
+    public int locate_sync(double tc) {
+        double iv = acc[row_len - 1];
+        double ns, os = (iv > 0) ? 1 : -1;
+        for (int i = 0; i < row_len; i++) {
+            iv += (acc[i] - iv) * tc;
+            ns = (iv > 0) ? 1 : -1;
+            work[i] = ns - os;
+            os = ns;
+        }
+        double v = work[0];
+        int pos = 0;
+        for (int i = 1; i < row_len; i++) {
+            if (work[i] < v) {
+                v = work[i];
+                pos = i;
+            }
+        }
+        return pos;
+    }
+
+    // the drift of the phasing pulse in samples per line that remains
+    // after the calibration, 0 if it is under half a pixel over the
+    // phasing period, NaN if it can't be measured reliably
+    public double phasing_slope() {
+        int lines = line - 1;
+        int n = groups.length;
+        if (n < min_fit_points) {
+            return Double.NaN;
+        }
+        // the pulse is compared hard limited, as locate_sync() sees
+        // it, so only its edges count and not what rides on it
+        limit(acc, work);
+        bin(work, reference);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int m = 0;
+        for (int g = 0; g < n; g++) {
+            limit(groups[g], work);
+            bin(work, profile);
+            double lag = peak_lag(profile, reference);
+            if (!Double.isNaN(lag)) {
+                int first = g * group_lines + 1;
+                int last = (g == n - 1) ? lines : first + group_lines - 1;
+                xs[m] = (first + last) / 2.0;
+                ys[m] = lag;
+                m++;
+            }
+        }
+        if (m < min_fit_points) {
+            return Double.NaN;
+        }
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int i = 0; i < m; i++) {
+            sx += xs[i];
+            sy += ys[i];
+            sxx += xs[i] * xs[i];
+            sxy += xs[i] * ys[i];
+        }
+        double den = m * sxx - sx * sx;
+        if (den <= 0) {
+            return Double.NaN;
+        }
+        double slope = (m * sxy - sx * sy) / den;
+        double icept = (sy - slope * sx) / m;
+        double ss = 0;
+        for (int i = 0; i < m; i++) {
+            double r = ys[i] - (icept + slope * xs[i]);
+            ss += r * r;
+        }
+        if (Math.sqrt(ss / m) > max_fit_rms) {
+            return Double.NaN;
+        }
+        return significant(slope, lines);
+    }
+
+    // slope in bins per line over a span of lines to samples per line,
+    // or 0 if the drift over the span is under half a bin
+    private double significant(double slope, double span) {
+        if (Math.abs(slope * span) < 0.5) {
+            return 0;
+        }
+        return slope * row_len / bins;
+    }
+
+    // begin tracking image lines with the profile in nbins bins,
+    // if correct is false end_track_line() always returns 0
+    public void start_track(int len, double step, int nbins, boolean correct) {
+        size(len, step, nbins);
+        correcting = correct;
+        have_reference = false;
+        window_lines = 0;
+        line = 0;
+        shift = offset(line);
+        applied = 0;
+        prev_lag = 0;
+        track_windows = 0;
+        correlation_sum = 0;
+        fit_n = 0;
+        fit_x = fit_y = fit_xx = fit_xy = fit_yy = 0;
+    }
+
+    // add the sample at position j of the current image line
+    public void add_track(int j, double v) {
+        int k = j - shift;
+        if (k < 0) {
+            k += row_len;
+        }
+        // a line lengthened by a correction runs over by a few samples
+        if (k < row_len) {
+            acc[k] += v;
+        }
+    }
+
+    // add_track() for v[off] .. v[off + n - 1] at j .. j + n - 1
+    public void add_track(int j, double[] v, int off, int n) {
+        for (int i = 0; i < n; i++) {
+            add_track(j + i, v[off + i]);
+        }
+    }
+
+    // called at each line start, returns the number of samples to
+    // move the line start by, usually 0
+    public int end_track_line() {
+        line++;
+        shift = offset(line);
+        if (++window_lines < track_lines) {
+            return 0;
+        }
+        window_lines = 0;
+        bin(acc, profile);
+        java.util.Arrays.fill(acc, 0.0);
+        double center = line - track_lines / 2.0;
+        int correction = 0;
+        if (!have_reference) {
+            System.arraycopy(profile, 0, reference, 0, bins);
+            have_reference = true;
+        } else {
+            double lag = peak_lag(profile, reference);
+            track_windows++;
+            correlation_sum += last_correlation;
+            if (!Double.isNaN(lag)) {
+                // total displacement in bins, the reference only
+                // follows the image while it is aligned
+                add_fit_point(center, lag + (double) applied * bins / row_len);
+            }
+            int c = compare(lag);
+            correction = correcting ? c : 0;
+            if (Double.isNaN(lag) || Math.abs(lag) < 0.5) {
+                // aligned, let the reference follow the image
+                for (int i = 0; i < bins; i++) {
+                    reference[i] += (profile[i] - reference[i]) * reference_tc;
+                }
+            }
+            applied += correction;
+        }
+        return correction;
+    }
+
+    private void add_fit_point(double x, double y) {
+        fit_n++;
+        fit_x += x;
+        fit_y += y;
+        fit_xx += x * x;
+        fit_xy += x * y;
+        fit_yy += y * y;
+    }
+
+    // the mean correlation of the image windows with the reference,
+    // near 1 for a clean chart, NaN before any window was compared
+    public double quality() {
+        return (track_windows > 0) ? correlation_sum / track_windows : Double.NaN;
+    }
+
+    // the drift of the image in samples per line that remains after
+    // the calibration, over the windows tracked so far, 0 if it is
+    // under half a pixel over the chart, NaN if unreliable
+    public double tracking_slope() {
+        int n = fit_n;
+        if (n < min_track_windows) {
+            return Double.NaN;
+        }
+        double den = n * fit_xx - fit_x * fit_x;
+        if (den <= 0) {
+            return Double.NaN;
+        }
+        double slope = (n * fit_xy - fit_x * fit_y) / den;
+        double icept = (fit_y - slope * fit_x) / n;
+        // residual sum of squares from the running sums
+        double ss = fit_yy - icept * fit_y - slope * fit_xy;
+        if (Math.sqrt(Math.max(0, ss) / n) > max_fit_rms) {
+            return Double.NaN;
+        }
+        return significant(slope, line);
+    }
+
+    // +1 above the middle of the range of src, -1 below
+    private void limit(double[] src, double[] dst) {
+        double lo = src[0], hi = src[0];
+        for (int k = 1; k < row_len; k++) {
+            lo = Math.min(lo, src[k]);
+            hi = Math.max(hi, src[k]);
+        }
+        double mid = (lo + hi) / 2;
+        for (int k = 0; k < row_len; k++) {
+            dst[k] = (src[k] > mid) ? 1 : -1;
+        }
+    }
+
+    // average line positions into bins, less the mean
+    private void bin(double[] src, double[] dst) {
+        java.util.Arrays.fill(dst, 0.0);
+        for (int k = 0; k < row_len; k++) {
+            dst[bin_of[k]] += src[k];
+        }
+        for (int b = 0; b < bins; b++) {
+            dst[b] *= bin_scale[b];
+        }
+        remove_mean(dst);
+    }
+
+    private static void remove_mean(double[] a) {
+        double sum = 0;
+        for (double v : a) {
+            sum += v;
+        }
+        double mean = sum / a.length;
+        for (int i = 0; i < a.length; i++) {
+            a[i] -= mean;
+        }
+    }
+
+    // the correction in samples for a displacement of the profile
+    // from the reference of lag bins
+    private int compare(double lag) {
+        double prev = prev_lag;
+        prev_lag = Double.isNaN(lag) ? 0 : lag;
+        if (Double.isNaN(lag)) {
+            last_lag = 0;
+            return 0;
+        }
+        last_lag = lag * row_len / bins;
+        // ignore anything under a bin, i.e. a pixel, and wait for a
+        // second window to agree, content that changes moves the
+        // peak around a bit
+        if (Math.abs(lag) < 1 || Math.abs(prev) < 1 || lag * prev < 0) {
+            return 0;
+        }
+        int step = (int) Math.round(last_lag);
+        return Math.max(-max_step, Math.min(max_step, step));
+    }
+
+    // circular cross-correlation of a against b for lags -max_lag ..
+    // max_lag, returns the displacement of a in bins, refined between
+    // bins, or NaN if the normalized correlation is too low
+    private double peak_lag(double[] a, double[] b) {
+        double best = Double.NEGATIVE_INFINITY;
+        double c_m = 0, c_0 = 0, c_p = 0;
+        int best_lag = 0;
+        double prev = corr(a, b, -max_lag - 1);
+        double cur = corr(a, b, -max_lag);
+        for (int lag = -max_lag; lag <= max_lag; lag++) {
+            double next = corr(a, b, lag + 1);
+            if (cur > best) {
+                best = cur;
+                best_lag = lag;
+                c_m = prev;
+                c_0 = cur;
+                c_p = next;
+            }
+            prev = cur;
+            cur = next;
+        }
+        double norm = Math.sqrt(energy(a) * energy(b));
+        last_correlation = (norm > 0) ? best / norm : 0;
+        if (last_correlation < min_correlation) {
+            return Double.NaN;
+        }
+        // refine the peak between bins with a parabola
+        double den = c_m - 2 * c_0 + c_p;
+        double frac = (den < 0) ? 0.5 * (c_m - c_p) / den : 0;
+        return best_lag + frac;
+    }
+
+    // sum of a[i] * b[i - lag]
+    private double corr(double[] a, double[] b, int lag) {
+        double sum = 0;
+        for (int i = 0; i < bins; i++) {
+            int k = i - lag;
+            if (k < 0) {
+                k += bins;
+            } else if (k >= bins) {
+                k -= bins;
+            }
+            sum += a[i] * b[k];
+        }
+        return sum;
+    }
+
+    private static double energy(double[] a) {
+        double sum = 0;
+        for (double v : a) {
+            sum += v * v;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,164 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+/**
+ *
+ * @author mgrouch
+ */
+// a bank of Goertzel tone detectors sharing one pass over a block
+//
+// up to four tones are evaluated per pass with their state in locals,
+// and the total signal energy is summed in the same pass so each tone
+// can be reported relative to it; values and thresholds are the same
+// as a GoertzelFilter with the same frequency and window
+final public class ToneDetectorBank {
+
+    final int tones;
+    final int groups;
+    // Goertzel factors, padded to a multiple of four
+    final double[] coeff;
+    final double[] s1, s2;
+    final double[] value;
+    final double[] relative;
+    final double samples;
+    final int window;
+    final double scaling_factor;
+    double threshold;
+    int samplecount;
+    double energy;
+
+    // frequencies are normalized, i.e. f / sample_rate
+    public ToneDetectorBank(double[] frequencies, double samples, double threshold) {
+        tones = frequencies.length;
+        groups = (tones + 3) / 4;
+        coeff = new double[groups * 4];
+        s1 = new double[groups * 4];
+        s2 = new double[groups * 4];
+        value = new double[tones];
+        relative = new double[tones];
+        for (int t = 0; t < tones; t++) {
+            coeff[t] = 2 * Math.cos(2 * Math.PI * frequencies[t]);
+        }
+        this.samples = samples;
+        this.threshold = threshold;
+        // a window ends when samplecount >= samples, as in GoertzelFilter
+        window = (int) Math.ceil(samples);
+        // "scaling factor" gives unit result
+        // for unit input level
+        scaling_factor = 4.0 / (samples * samples);
+        reset();
+    }
+
+    public void reset() {
+        for (int t = 0; t < coeff.length; t++) {
+            s1[t] = s2[t] = 0;
+        }
+        for (int t = 0; t < tones; t++) {
+            value[t] = relative[t] = 0;
+        }
+        samplecount = 0;
+        energy = 0;
+    }
+
+    // samples left before the values next change
+    public int remaining() {
+        return window - samplecount;
+    }
+
+    public void process(double[] data, int off, int len) {
+        while (len > 0) {
+            int n = Math.min(len, window - samplecount);
+            for (int g = 0; g < groups; g++) {
+                process_group(g * 4, data, off, n);
+            }
+            samplecount += n;
+            off += n;
+            len -= n;
+            if (samplecount >= window) {
+                update();
+            }
+        }
+    }
+
+    private void process_group(int t, double[] data, int off, int n) {
+        final double c0 = coeff[t], c1 = coeff[t + 1], c2 = coeff[t + 2], c3 = coeff[t + 3];
+        double a0 = s1[t], a1 = s1[t + 1], a2 = s1[t + 2], a3 = s1[t + 3];
+        double b0 = s2[t], b1 = s2[t + 1], b2 = s2[t + 2], b3 = s2[t + 3];
+        double e = 0;
+        for (int i = off, end = off + n; i < end; i++) {
+            double v = data[i];
+            double x0 = v + c0 * a0 - b0;
+            double x1 = v + c1 * a1 - b1;
+            double x2 = v + c2 * a2 - b2;
+            double x3 = v + c3 * a3 - b3;
+            b0 = a0;
+            b1 = a1;
+            b2 = a2;
+            b3 = a3;
+            a0 = x0;
+            a1 = x1;
+            a2 = x2;
+            a3 = x3;
+            e += v * v;
+        }
+        s1[t] = a0;
+        s1[t + 1] = a1;
+        s1[t + 2] = a2;
+        s1[t + 3] = a3;
+        s2[t] = b0;
+        s2[t + 1] = b1;
+        s2[t + 2] = b2;
+        s2[t + 3] = b3;
+        if (t == 0) {
+            energy += e;
+        }
+    }
+
+    private void update() {
+        // a unit sine has a mean power of 1/2
+        double power = 2 * energy / samplecount;
+        for (int t = 0; t < tones; t++) {
+            value[t] = (s2[t] * s2[t] + s1[t] * s1[t]
+                    - coeff[t] * s1[t] * s2[t])
+                    * scaling_factor;
+            relative[t] = (power > 0) ? value[t] / power : 0;
+            s1[t] = s2[t] = 0;
+        }
+        samplecount = 0;
+        energy = 0;
+    }
+
+    public void set_threshold(double v) {
+        threshold = v;
+    }
+
+    public double value(int t) {
+        return value[t];
+    }
+
+    // this tone's share of the total signal energy, 0 to about 1
+    public double relative(int t) {
+        return relative[t];
+    }
+
+    public boolean active(int t) {
+        return (value[t] >= threshold);
+    }
+}
@@ -0,0 +1,95 @@
+/***************************************************************************
+ *   Copyright (C) 2024 by mgrouch at Bareboat Necessities                 *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU General Public License for more details.                          *
+ *                                                                         *
+ *   You should have received a copy of the GNU General Public License     *
+ *   along with this program; if not, write to the                         *
+ *   Free Software Foundation, Inc.,                                       *
+ *   59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.             *
+ ***************************************************************************/
+package jwx;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *
+ * @author mgrouch
+ */
+// DspKernels with the vector API at the widest float shape the CPU
+// has, built only by the vector profile, see DspKernels
+//
+// each decoder loads its own, an instance isn't thread safe
+final class VectorKernels implements DspKernels {
+
+    static final VectorSpecies<Float> fs = FloatVector.SPECIES_PREFERRED;
+    final ScalarKernels scalar = new ScalarKernels();
+    // quantized pixels before the narrowing cast, JDK 17 boxes every
+    // vector it converts from float to int or byte
+    final float[] levels = new float[fs.length()];
+
+    @Override
+    public float dot(float[] a, int ao, float[] b, int bo, int n) {
+        if (n < fs.length()) {
+            // e.g. the resampler's few taps
+            return scalar.dot(a, ao, b, bo, n);
+        }
+        FloatVector acc = FloatVector.zero(fs);
+        int i = 0;
+        int bound = fs.loopBound(n);
+        for (; i < bound; i += fs.length()) {
+            FloatVector va = FloatVector.fromArray(fs, a, ao + i);
+            FloatVector vb = FloatVector.fromArray(fs, b, bo + i);
+            acc = acc.add(va.mul(vb));
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += a[ao + i] * b[bo + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void quantize(float[] src, byte[] dst, int len, boolean grayscale) {
+        int i = 0;
+        int bound = fs.loopBound(len);
+        for (; i < bound; i += fs.length()) {
+            FloatVector v = FloatVector.fromArray(fs, src, i).add(1.0f).mul(0.5f).max(0.0f).min(1.0f);
+            if (grayscale) {
+                v = v.mul(255.0f);
+            } else {
+                v = FloatVector.zero(fs).blend(255.0f, v.compare(VectorOperators.GT, 0.5f));
+            }
+            v.intoArray(levels, 0);
+            for (int k = 0; k < levels.length; k++) {
+                dst[i + k] = (byte) levels[k];
+            }
+        }
+        ScalarKernels.quantize(src, dst, i, len, grayscale);
+    }
+
+    @Override
+    public void to_float(double[] src, int off, float[] dst, int dst_off, int len) {
+        scalar.to_float(src, off, dst, dst_off, len);
+    }
+
+    @Override
+    public String name() {
+        return "vector " + fs.length() + " x float";
+    }
+
+    @Override
+    public boolean vectorized() {
+        return true;
+    }
+}